@@ -0,0 +1,68 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the lines of a generated file (RedbackParser.readLine). The mmap input is read through the line views
+ * that parseRecords uses, so no lines are decoded.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineScannerBenchmark {
+
+	@Param({ "global", "port", "port_c", "channel", "dot1q", "dot1q_c", "atm", "fr", "sub", "context", "link",
+			"linkgroup", "eps_apn", "eps_ctrl", "eps_traf", "aspcpu", "aspload", "aspmem", "ppa", "aspepscpu" })
+	public String policy;
+
+	@Param({ "reader", "mmap" })
+	public String inputMode;
+
+	@Param({ "2000" })
+	public int records;
+
+	@Param({ "2" })
+	public int rops;
+
+	private ParserFixture fixture;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		fixture = new ParserFixture(policy, records, rops);
+	}
+
+	@Benchmark
+	public int readLine(final ThroughputCounters counters) throws Exception {
+		final LineSource source = fixture.open(inputMode);
+		int lines = 0;
+		if (source instanceof MappedLineScanner) {
+			final MappedLineScanner mapped = (MappedLineScanner) source;
+			while (mapped.readLineView(ParserFixture.ROW_DELIM, 1) != null) {
+				lines++;
+			}
+		} else {
+			while (source.readLine(ParserFixture.ROW_DELIM, 1) != null) {
+				lines++;
+			}
+		}
+		counters.add(fixture.megabytes, lines);
+		return lines;
+	}
+}
@@ -0,0 +1,130 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Writes a directory of generated Redback PM files for the load test (LoadTestHarness).<br>
+ * <br>
+ * Usage: LoadFileGenerator &lt;scenario&gt; &lt;directory&gt; [files] [records] [rops]<br>
+ * <br>
+ * <table border="1" width="100%" cellpadding="3" cellspacing="0">
+ * <tr bgcolor="#CCCCFF" class="TableHeasingColor">
+ * <td><b>Scenario</b></td>
+ * <td><b>Description</b></td>
+ * <td><b>Default files / records / ROPs</b></td>
+ * </tr>
+ * <tr>
+ * <td>burst</td>
+ * <td>One ROP of many small files, one per node and policy, all policy families</td>
+ * <td>2000 / 50 / 1</td>
+ * </tr>
+ * <tr>
+ * <td>backlog</td>
+ * <td>Files of nodes that have been unreachable, a day of ROPs in each file</td>
+ * <td>20 / 200 / 96</td>
+ * </tr>
+ * <tr>
+ * <td>subscriber</td>
+ * <td>Huge subscriber (PM_policy_sub) files</td>
+ * <td>4 / 100000 / 1</td>
+ * </tr>
+ * <tr>
+ * <td>class</td>
+ * <td>Class counter policies with metering_class_counters and policing_class_counters continuation lines</td>
+ * <td>200 / 200 / 1</td>
+ * </tr>
+ * </table>
+ * <br>
+ * Files are named &lt;node&gt;_PM_policy_&lt;policy&gt;_&lt;yyyyMMdd.HHmmss&gt;+0000.log like the files collected from
+ * the nodes. The content only depends on the arguments.
+ *
+ */
+public final class LoadFileGenerator {
+
+	private static final String[] BACKLOG_POLICIES = { "port", "channel", "dot1q", "atm", "context" };
+	private static final String[] CLASS_POLICIES = { "port_c", "dot1q_c" };
+
+	private LoadFileGenerator() {
+	}
+
+	public static void main(final String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: LoadFileGenerator burst|backlog|subscriber|class <directory> [files] [records] [rops]");
+			System.exit(1);
+		}
+		final String scenario = args[0];
+		final File dir = new File(args[1]);
+
+		final String[] policies;
+		int files;
+		int records;
+		int rops;
+		if (scenario.equals("burst")) {
+			policies = RedbackFileGenerator.POLICIES;
+			files = 2000;
+			records = 50;
+			rops = 1;
+		} else if (scenario.equals("backlog")) {
+			policies = BACKLOG_POLICIES;
+			files = 20;
+			records = 200;
+			rops = 96;
+		} else if (scenario.equals("subscriber")) {
+			policies = new String[] { "sub" };
+			files = 4;
+			records = 100000;
+			rops = 1;
+		} else if (scenario.equals("class")) {
+			policies = CLASS_POLICIES;
+			files = 200;
+			records = 200;
+			rops = 1;
+		} else {
+			throw new IllegalArgumentException("Unknown scenario " + scenario);
+		}
+		if (args.length > 2) {
+			files = Integer.parseInt(args[2]);
+		}
+		if (args.length > 3) {
+			records = Integer.parseInt(args[3]);
+		}
+		if (args.length > 4) {
+			rops = Integer.parseInt(args[4]);
+		}
+
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new Exception("Can not create directory " + dir);
+		}
+		final String rop = ropName(RedbackFileGenerator.EPOCHTIME);
+		long bytes = 0;
+		for (int file = 0; file < files; file++) {
+			final String policy = policies[file % policies.length];
+			final String node = scenario + (file / policies.length + 1);
+			final byte[] content = RedbackFileGenerator.generate(policy, records, rops).getBytes(Charset.defaultCharset());
+			final OutputStream out = new FileOutputStream(new File(dir, node + "_" + RedbackFileGenerator.tagId(policy)
+					+ "_" + rop + ".log"));
+			try {
+				out.write(content);
+			} finally {
+				out.close();
+			}
+			bytes += content.length;
+		}
+		System.out.println("Generated " + files + " " + scenario + " files, " + bytes + " bytes into " + dir);
+	}
+
+	/**
+	 * @return start of the ROP of epochtime as in the file names, for example 20090816.151500+0000
+	 */
+	private static String ropName(final long epochtime) {
+		final SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd.HHmmssZ");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.format(new Date(epochtime / 900 * 900 * 1000));
+	}
+}
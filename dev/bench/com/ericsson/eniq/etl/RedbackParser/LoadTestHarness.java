@@ -0,0 +1,229 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+
+/**
+ * Replays a directory of Redback PM files (see LoadFileGenerator) through RedbackParser.run() and reports the end to
+ * end throughput and the latency percentiles of the files.<br>
+ * <br>
+ * Usage: LoadTestHarness &lt;directory&gt; [workerPoolSize] [inputMode] [streamingOutput] [rounds]<br>
+ * <br>
+ * The harness is the ParserHost of the parser in place of Main: it gives the files of the directory, with the
+ * interface properties tag_id (from the file name), redback.workerPoolSize, redback.inputMode and
+ * redback.streamingOutput, and it counts the rows saved to the measurement files instead of writing them. Other
+ * interface properties can be given as redback.* system properties. The latency of a file is the time from preParse to finallyParse. All rounds parse the whole directory with a new
+ * parser, and the first rounds warm up the JVM, so only the last round is reported.
+ *
+ */
+public final class LoadTestHarness implements ParserHost {
+
+	private static final Pattern TAG_ID = Pattern.compile("(PM_policy_[A-Za-z0-9_]+?)_\\d{8}\\.");
+
+	// Keeps the level of the load test parser loggers. Lower levels would log the skipped lines of the generated
+	// files, and the console output would be measured with the parsing.
+	private static final Logger LOG = Logger.getLogger("etl.loadtest");
+	static {
+		LOG.setLevel(Level.SEVERE);
+	}
+
+	private final ConcurrentLinkedQueue<GeneratedFile> queue = new ConcurrentLinkedQueue<GeneratedFile>();
+	private final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+	private final AtomicLong rows = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private long bytes = 0;
+
+	private LoadTestHarness(final File[] files, final Properties properties) {
+		for (final File file : files) {
+			final Matcher m = TAG_ID.matcher(file.getName());
+			if (m.find()) {
+				final Properties fileProperties = new Properties();
+				fileProperties.putAll(properties);
+				fileProperties.setProperty("tag_id", m.group(1));
+				queue.add(new GeneratedFile(file, fileProperties));
+				bytes += file.length();
+			}
+		}
+	}
+
+	public static void main(final String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: LoadTestHarness <directory> [workerPoolSize] [inputMode] [streamingOutput] [rounds]");
+			System.exit(1);
+		}
+		final File[] files = new File(args[0]).listFiles();
+		if (files == null) {
+			throw new Exception("Directory " + args[0] + " not found");
+		}
+		Arrays.sort(files);
+		final Properties properties = new Properties();
+		for (final String name : System.getProperties().stringPropertyNames()) {
+			if (name.startsWith("redback.")) {
+				properties.setProperty(name, System.getProperty(name));
+			}
+		}
+		properties.setProperty("redback.workerPoolSize", (args.length > 1) ? args[1] : "1");
+		properties.setProperty("redback.inputMode", (args.length > 2) ? args[2] : "reader");
+		properties.setProperty("redback.streamingOutput", (args.length > 3) ? args[3] : "false");
+		final int rounds = (args.length > 4) ? Integer.parseInt(args[4]) : 3;
+
+		System.out.println("Load test of " + args[0] + " with " + properties);
+		for (int round = 1; round <= rounds; round++) {
+			final LoadTestHarness harness = new LoadTestHarness(files, properties);
+			final RedbackParser parser = new RedbackParser();
+			parser.initHost(harness, "loadtest", "loadtest", "loadtest", "");
+			final long start = System.nanoTime();
+			parser.run();
+			final long elapsed = System.nanoTime() - start;
+			if (round == rounds) {
+				harness.report(elapsed);
+			}
+		}
+	}
+
+	private void report(final long elapsedNanos) {
+		final double seconds = elapsedNanos / 1e9;
+		final int files = latencies.size();
+		final List<Long> sorted = new ArrayList<Long>(latencies);
+		Collections.sort(sorted);
+		System.out.println(String.format("files %d (%d failed), %.1f MB, %d rows in %.3f s", files, errors.get(),
+				bytes / 1e6, rows.get(), seconds));
+		System.out.println(String.format("throughput %.1f files/s, %.2f MB/s, %.0f rows/s", files / seconds, bytes
+				/ 1e6 / seconds, rows.get() / seconds));
+		System.out.println(String.format("latency ms p50 %.2f, p90 %.2f, p99 %.2f, max %.2f", percentile(sorted, 50),
+				percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 100)));
+	}
+
+	/**
+	 * @return nearest rank percentile of sorted latencies in milliseconds
+	 */
+	private static double percentile(final List<Long> sorted, final int percent) {
+		if (sorted.isEmpty()) {
+			return 0;
+		}
+		final int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+		return sorted.get(Math.max(rank, 1) - 1) / 1e6;
+	}
+
+	@Override
+	public InputFile nextSourceFile() {
+		return queue.poll();
+	}
+
+	@Override
+	public void preParse(final InputFile sf) {
+		((GeneratedFile) sf).start = System.nanoTime();
+	}
+
+	@Override
+	public void postParse(final InputFile sf) {
+	}
+
+	@Override
+	public void errorParse(final Exception e, final InputFile sf) {
+		errors.incrementAndGet();
+		System.err.println("Parsing of " + sf.getName() + " failed: " + e);
+	}
+
+	@Override
+	public void finallyParse(final InputFile sf) {
+		latencies.add(System.nanoTime() - ((GeneratedFile) sf).start);
+	}
+
+	/**
+	 * @return measurement file that only counts the saved rows, it takes the rows one by one or in batches
+	 */
+	@Override
+	public MeasurementFile createMeasurementFile(final InputFile sf, final String tagId, final String techPack,
+			final String setType, final String setName, final String workerName, final Logger log) {
+		final InvocationHandler handler = new InvocationHandler() {
+			private boolean open = true;
+
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) {
+				final String name = method.getName();
+				if (name.equals("saveData")) {
+					rows.incrementAndGet();
+				} else if (name.equals("saveRows")) {
+					rows.addAndGet((Integer) args[2]);
+				} else if (name.equals("close")) {
+					open = false;
+				} else if (name.equals("isOpen")) {
+					return open;
+				}
+				return defaultValue(method.getReturnType());
+			}
+		};
+		return (MeasurementFile) Proxy.newProxyInstance(BatchMeasurementFile.class.getClassLoader(),
+				new Class<?>[] { BatchMeasurementFile.class }, handler);
+	}
+
+	private static Object defaultValue(final Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+
+	/**
+	 * A file of the replayed directory
+	 */
+	private static final class GeneratedFile implements InputFile {
+
+		private final File file;
+		private final Properties properties;
+		// Set in preParse
+		private volatile long start;
+
+		GeneratedFile(final File file, final Properties properties) {
+			this.file = file;
+			this.properties = properties;
+		}
+
+		@Override
+		public String getName() {
+			return file.getName();
+		}
+
+		@Override
+		public String getDir() {
+			return file.getParent();
+		}
+
+		@Override
+		public String getProperty(final String name, final String defaultValue) {
+			return properties.getProperty(name, defaultValue);
+		}
+
+		@Override
+		public InputStream getFileInputStream() throws Exception {
+			return new FileInputStream(file);
+		}
+
+		@Override
+		public long fileSize() {
+			return file.length();
+		}
+	}
+}
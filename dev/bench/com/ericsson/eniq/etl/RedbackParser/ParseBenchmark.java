@@ -0,0 +1,58 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing a generated file into the ROP and file data stores: RedbackParser.parseRecords (tokenizing,
+ * checkGroupKeys, storeRow and the ROP flushes) or parseTable for the table format policies. Writing the records to
+ * a measurement file is not included.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param({ "global", "port", "port_c", "channel", "dot1q", "dot1q_c", "atm", "fr", "sub", "context", "link",
+			"linkgroup", "eps_apn", "eps_ctrl", "eps_traf", "aspcpu", "aspload", "aspmem", "ppa", "aspepscpu" })
+	public String policy;
+
+	@Param({ "reader", "mmap" })
+	public String inputMode;
+
+	@Param({ "2000" })
+	public int records;
+
+	@Param({ "2" })
+	public int rops;
+
+	private ParserFixture fixture;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		fixture = new ParserFixture(policy, records, rops);
+	}
+
+	@Benchmark
+	public int parse(final ThroughputCounters counters) throws Exception {
+		final int rows = fixture.parse(inputMode);
+		counters.add(fixture.megabytes, rows);
+		return rows;
+	}
+}
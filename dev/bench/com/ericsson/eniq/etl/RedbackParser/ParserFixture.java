@@ -0,0 +1,126 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.io.StringReader;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A RedbackParser and one generated file, set up for calling the parse methods without Main, SourceFile and
+ * MeasurementFile. The private parse methods are called through reflection, like in RedbackParserTest. The
+ * reflection cost is once per parsed file.
+ *
+ */
+final class ParserFixture {
+
+	static final String ROW_DELIM = "\n";
+	static final String COL_DELIM = ";";
+	static final String FIELD_DELIM = ":";
+
+	// Keeps the level of the benchmark parser loggers. Lower levels would log every additional ROP and the missing
+	// table format property of every table format file.
+	private static final Logger LOG = Logger.getLogger("etl.bench");
+	static {
+		LOG.setLevel(Level.SEVERE);
+	}
+
+	final String policy;
+	final String tagId;
+	final String text;
+	final byte[] bytes;
+	final double megabytes;
+
+	private final RedbackParser parser = new RedbackParser();
+	private final ParseContext ctx = new ParseContext(10000);
+	private final Method setGroupKeys;
+	private final Method parseRecords;
+	private final Method parseTable;
+
+	/**
+	 * @see RedbackFileGenerator#generate(String, int, int)
+	 */
+	ParserFixture(final String policy, final int records, final int rops) throws Exception {
+		this.policy = policy;
+		this.tagId = RedbackFileGenerator.tagId(policy);
+		this.text = RedbackFileGenerator.generate(policy, records, rops);
+		this.bytes = text.getBytes(Charset.defaultCharset());
+		this.megabytes = bytes.length / 1000000.0;
+
+		parser.init(null, "bench", "bench", "bench", "");
+		setGroupKeys = RedbackParser.class.getDeclaredMethod("setGroupKeys", ParseContext.class, String.class);
+		parseRecords = RedbackParser.class.getDeclaredMethod("parseRecords", ParseContext.class, LineSource.class,
+				int.class, String.class, String.class, String.class, String.class, String.class);
+		parseTable = RedbackParser.class.getDeclaredMethod("parseTable", ParseContext.class, LineSource.class,
+				int.class, String.class, String.class, String.class, String.class, String.class, String.class, String.class);
+		setGroupKeys.setAccessible(true);
+		parseRecords.setAccessible(true);
+		parseTable.setAccessible(true);
+	}
+
+	/**
+	 * Resets the parse context and starts reading the file from the beginning.
+	 * 
+	 * @param inputMode
+	 *            reader or mmap, as in interface property redback.inputMode
+	 * @return line source of the file
+	 */
+	LineSource open(final String inputMode) {
+		ctx.reset();
+		if ("mmap".equals(inputMode)) {
+			ctx.mappedLineScanner.reset(ByteBuffer.wrap(bytes), Charset.defaultCharset());
+			return ctx.mappedLineScanner;
+		}
+		ctx.lineScanner.reset(new StringReader(text));
+		return ctx.lineScanner;
+	}
+
+	/**
+	 * @return the data lines of the file (header excluded)
+	 */
+	List<String> lines() throws Exception {
+		final LineSource source = open("reader");
+		final List<String> lines = new ArrayList<String>();
+		source.readLine(ROW_DELIM, 1);
+		String line;
+		while ((line = source.readLine(ROW_DELIM, 1)) != null) {
+			lines.add(line);
+		}
+		return lines;
+	}
+
+	/**
+	 * @return compiled group keys of the policy
+	 */
+	GroupKeySchema schema() throws Exception {
+		ctx.reset();
+		setGroupKeys.invoke(parser, ctx, tagId);
+		return ctx.groupKeySchema;
+	}
+
+	/**
+	 * Parses the whole file into the data store of the parse context, the same way as RedbackParser.parse does
+	 * before the records are written to the measurement file.
+	 * 
+	 * @return number of records (measurement rows) found
+	 */
+	int parse(final String inputMode) throws Exception {
+		final LineSource source = open(inputMode);
+		setGroupKeys.invoke(parser, ctx, tagId);
+		final String firstLine = source.readLine(ROW_DELIM, 1);
+		if (RedbackFileGenerator.isTable(policy)) {
+			parseTable.invoke(parser, ctx, source, 1, COL_DELIM, ROW_DELIM, FIELD_DELIM, firstLine, tagId, null, null);
+		} else {
+			parseRecords.invoke(parser, ctx, source, 1, COL_DELIM, ROW_DELIM, FIELD_DELIM, firstLine, tagId);
+		}
+		int records = 0;
+		for (final Map<RecordKey, RopRecord> rop : ctx.m_dataStoreMap.values()) {
+			records += rop.size();
+		}
+		return records;
+	}
+}
@@ -0,0 +1,177 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.Random;
+
+/**
+ * Generates synthetic Redback PM files for the benchmarks.<br>
+ * <br>
+ * Record format policies get one data line per record and ROP, split in two partial lines for every second record
+ * so that the merging of partial records is also measured. Every third counter has two values (the _agg split) and
+ * some counters are (N/A). Class counter (_c) variants end each data line with metering and policing class counter
+ * fields followed by their continuation lines. Table format policies (asp*, ppa) get one table with one row per
+ * record.<br>
+ * <br>
+ * The content only depends on the arguments, so all runs of a benchmark parse the same data.
+ *
+ */
+final class RedbackFileGenerator {
+
+	/** Policies (after PM_policy_) of every policy family, record format policies first */
+	static final String[] POLICIES = { "global", "port", "port_c", "channel", "dot1q", "dot1q_c", "atm", "fr", "sub",
+			"context", "link", "linkgroup", "eps_apn", "eps_ctrl", "eps_traf", "aspcpu", "aspload", "aspmem", "ppa",
+			"aspepscpu" };
+
+	/** Epochtime of the first ROP of generated files, 16 Aug 2009 15:25:02 GMT */
+	static final long EPOCHTIME = 1250436302L;
+
+	private static final int COUNTERS = 12;
+	private static final int CLASSES = 3;
+
+	private RedbackFileGenerator() {
+	}
+
+	/**
+	 * @return tag_id of policy
+	 */
+	static String tagId(final String policy) {
+		return "PM_policy_" + policy;
+	}
+
+	/**
+	 * @return true if policy is in table format
+	 */
+	static boolean isTable(final String policy) {
+		return policy.startsWith("asp") || policy.equals("ppa");
+	}
+
+	/**
+	 * @return true if policy has class counter continuation lines
+	 */
+	static boolean isClass(final String policy) {
+		return policy.endsWith("_c");
+	}
+
+	/**
+	 * Generates the content of one Redback PM file.
+	 * 
+	 * @param policy
+	 *            policy name after PM_policy_
+	 * @param records
+	 *            number of records in each ROP
+	 * @param rops
+	 *            number of ROPs in the file, table format files always have one
+	 * @return file content, lines end with \n
+	 */
+	static String generate(final String policy, final int records, final int rops) {
+		final StringBuilder sb = new StringBuilder(records * rops * 256);
+		sb.append(tagId(policy)).append(" header\n");
+		if (isTable(policy)) {
+			table(sb, policy, records);
+			return sb.toString();
+		}
+		final Random random = new Random(policy.hashCode());
+		for (int rop = 0; rop < rops; rop++) {
+			final long epochtime = EPOCHTIME + rop * 900L;
+			for (int record = 0; record < records; record++) {
+				final String keys = "epochtime:" + epochtime + ";" + groupKeys(policy, record);
+				if (record % 2 == 0) {
+					sb.append(keys);
+					counters(sb, random, 0, COUNTERS);
+				} else {
+					sb.append(keys);
+					counters(sb, random, 0, COUNTERS / 2);
+					sb.append('\n').append(keys);
+					counters(sb, random, COUNTERS / 2, COUNTERS);
+				}
+				if (isClass(policy)) {
+					classCounters(sb, random);
+				}
+				sb.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return group key fields (without epochtime) of record
+	 */
+	private static String groupKeys(final String policy, final int record) {
+		final int slot = record / 2000 + 1;
+		final int port = record % 2000 / 100 + 1;
+		final int n = record % 100;
+		final String family = isClass(policy) ? policy.substring(0, policy.length() - 2) : policy;
+		if (family.equals("global") || family.equals("eps_ctrl") || family.equals("eps_traf")) {
+			// Only epochtime is a group key, so all lines of a ROP are merged into one record
+			return "instance:" + record + ";";
+		} else if (family.equals("port")) {
+			return "slot:" + slot + ";port:" + (record % 2000 + 1) + ";";
+		} else if (family.equals("channel") || family.equals("fr")) {
+			return "slot:" + slot + ";port:" + port + ";channel:" + n + ";";
+		} else if (family.equals("dot1q")) {
+			// Every fourth record has no (nullable) policing_policy_name
+			return "slot:" + slot + ";port:" + port + ";vlan_id:" + n + ";"
+					+ ((record % 4 == 0) ? "" : "policing_policy_name:policy" + (n % 7) + ";");
+		} else if (family.equals("atm")) {
+			return "slot:" + slot + ";port:" + port + ";vpi:" + (n / 10) + ";vci:" + (n % 10 + 32) + ";";
+		} else if (family.equals("sub")) {
+			return "user_name:subscriber" + record + "@context" + (record % 16) + ";";
+		} else if (family.equals("context")) {
+			return "context_name:context" + record + ";";
+		} else if (family.equals("link") || family.equals("linkgroup")) {
+			return "description:link group " + record + ";";
+		} else if (family.equals("eps_apn")) {
+			return "SgiApnIndex:" + record + ";";
+		}
+		throw new IllegalArgumentException("Unknown policy " + policy);
+	}
+
+	private static void counters(final StringBuilder sb, final Random random, final int from, final int to) {
+		for (int c = from; c < to; c++) {
+			sb.append("counter").append(c).append(':');
+			if (c % 3 == 0) {
+				sb.append(random.nextInt(1000000)).append(' ').append(random.nextInt(1000));
+			} else if (c % 11 == 10) {
+				sb.append("(N/A)");
+			} else {
+				sb.append(random.nextInt(1000000));
+			}
+			sb.append(';');
+		}
+	}
+
+	private static void classCounters(final StringBuilder sb, final Random random) {
+		sb.append("metering_class_counters:");
+		for (int c = 0; c < CLASSES; c++) {
+			sb.append("\nclass class").append(c).append(", pkts:").append(random.nextInt(100000)).append(", bytes:")
+					.append(random.nextInt(10000000));
+		}
+		sb.append(";policing_class_counters:");
+		for (int c = 0; c < CLASSES; c++) {
+			sb.append("\nclass class").append(c).append(", pkts:").append(random.nextInt(100000)).append(", bytes:")
+					.append(random.nextInt(10000000));
+		}
+		sb.append(';');
+	}
+
+	private static void table(final StringBuilder sb, final String policy, final int records) {
+		sb.append("Epochtime : ").append(EPOCHTIME).append(";\n");
+		for (int record = 0; record < records; record++) {
+			final int slot = record / 16 + 1;
+			final int unit = record % 16 + 1;
+			if (policy.equals("aspmem")) {
+				sb.append(slot).append('/').append(unit).append(": ").append(1000000 + record).append(' ')
+						.append(500000 + record);
+			} else if (policy.equals("ppa")) {
+				sb.append(record / 2 + 1).append('/').append((record % 2 == 0) ? "IPPA" : "EPPA").append(": ").append(record % 100)
+						.append(".5% ").append(record % 90).append(".5% ").append(record % 80).append(".5%");
+			} else if (policy.equals("aspload")) {
+				sb.append(slot).append('/').append(unit).append(": ").append(record % 10).append(".25 ")
+						.append(record % 9).append(".50 ").append(record % 8).append(".75");
+			} else {
+				sb.append(slot).append('/').append(unit).append(": ").append(record % 100).append(".5% ")
+						.append(record % 90).append(".5% ").append(record % 80).append(".5%");
+			}
+			sb.append('\n');
+		}
+	}
+}
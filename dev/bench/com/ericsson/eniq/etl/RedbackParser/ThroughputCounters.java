@@ -0,0 +1,34 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary benchmark results. JMH reports the counters as rates next to the ops/s of the benchmark, so the results
+ * show MB/s and rows/s of parsed data. The allocation rate is reported by the gc profiler (-prof gc).
+ *
+ */
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+@State(Scope.Thread)
+public class ThroughputCounters {
+
+	/** Megabytes of Redback file content handled */
+	public double megabytes;
+
+	/** Rows handled: lines for the line scanner and tokenizer, measurement rows (records) for parsing */
+	public long rows;
+
+	@Setup(Level.Iteration)
+	public void clean() {
+		megabytes = 0;
+		rows = 0;
+	}
+
+	void add(final double fileMegabytes, final long fileRows) {
+		megabytes += fileMegabytes;
+		rows += fileRows;
+	}
+}
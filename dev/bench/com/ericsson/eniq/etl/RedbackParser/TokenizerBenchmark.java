@@ -0,0 +1,73 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tokenizing the data lines of a generated file and checking their group keys (RedbackParser.checkGroupKeys),
+ * without reading and storing. Class counter variants are parsed with ParseBenchmark, because their continuation
+ * lines are read while a line is tokenized.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+	@Param({ "global", "port", "channel", "dot1q", "atm", "fr", "sub", "context", "link", "linkgroup", "eps_apn",
+			"eps_ctrl", "eps_traf" })
+	public String policy;
+
+	@Param({ "2000" })
+	public int records;
+
+	@Param({ "2" })
+	public int rops;
+
+	private ParserFixture fixture;
+	private List<String> lines;
+	private GroupKeySchema schema;
+	private RecordTokenizer tokenizer;
+	private final ArrayList<NameValuePair> list = new ArrayList<NameValuePair>();
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		fixture = new ParserFixture(policy, records, rops);
+		lines = fixture.lines();
+		schema = fixture.schema();
+		tokenizer = new RecordTokenizer(ParserFixture.COL_DELIM.charAt(0), ParserFixture.FIELD_DELIM.charAt(0),
+				Logger.getLogger("etl.bench.tokenizer"));
+	}
+
+	@Benchmark
+	public int tokenize(final ThroughputCounters counters) throws Exception {
+		int valid = 0;
+		for (final String line : lines) {
+			list.clear();
+			tokenizer.tokenize(line, list);
+			if (schema.hasGroupKeys(list)) {
+				valid++;
+			}
+		}
+		counters.add(fixture.megabytes, lines.size());
+		return valid;
+	}
+}
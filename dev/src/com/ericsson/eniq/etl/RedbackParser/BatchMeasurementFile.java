@@ -0,0 +1,37 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+
+/**
+ * MeasurementFile that takes many rows in one call. If the measurement file created by the host implements this
+ * interface, RedbackParser gives it the file level columns once and the records in batches of whole rows (interface
+ * property redback.emitBatchSize). Other measurement files get each counter with addData and each row with saveData.
+ *
+ */
+public interface BatchMeasurementFile extends MeasurementFile {
+
+	/**
+	 * Sets the columns that have the same value in every row of the file (DATETIME_ID, filename, DC_SUSPECTFLAG,
+	 * DIRNAME, JVM_TIMEZONE and vendorID). Called once, before the first rows are saved.
+	 *
+	 * @param names
+	 *            column names
+	 * @param values
+	 *            values of the columns, in the order of names
+	 * @throws Exception
+	 */
+	void setConstantData(String[] names, String[] values) throws Exception;
+
+	/**
+	 * Saves rows with their counters and the constant columns of the file.
+	 *
+	 * @param names
+	 *            counter names of each row
+	 * @param values
+	 *            counter values of each row, in the order of the names of the row. (N/A) values are null.
+	 * @param count
+	 *            number of rows in names and values, the arrays may be longer
+	 * @throws Exception
+	 */
+	void saveRows(String[][] names, String[][] values, int count) throws Exception;
+}
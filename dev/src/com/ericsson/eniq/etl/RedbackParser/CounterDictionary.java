@@ -0,0 +1,61 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counter names of one Redback policy, each interned to a column number.<br>
+ * <br>
+ * Records of the policy store their values by column, so a counter name is kept once per policy instead of once per
+ * value. Columns are added the first time a counter name is seen and never removed. The dictionary is shared by all
+ * files of the policy and can be used by several parser threads at the same time.
+ *
+ */
+final class CounterDictionary {
+
+	private final Map<String, Integer> columns = new ConcurrentHashMap<String, Integer>();
+	// Names by column. Written under the lock before the column is published in columns.
+	private volatile String[] names = new String[32];
+	private int size = 0;
+
+	/**
+	 * @param name
+	 *            counter name, case is significant
+	 * @return column of the counter, a new column is added if the name has not been seen before
+	 */
+	int columnOf(final String name) {
+		final Integer column = columns.get(name);
+		if (column != null) {
+			return column;
+		}
+		return add(name);
+	}
+
+	private synchronized int add(final String name) {
+		final Integer column = columns.get(name);
+		if (column != null) {
+			return column;
+		}
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+		}
+		names[size] = name;
+		columns.put(name, size);
+		return size++;
+	}
+
+	/**
+	 * @return counter name of column
+	 */
+	String nameOf(final int column) {
+		return names[column];
+	}
+
+	/**
+	 * @return number of columns
+	 */
+	synchronized int size() {
+		return size;
+	}
+}
@@ -0,0 +1,68 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.List;
+
+/**
+ * Epochtime field of a parsed line. The value is parsed into seconds once, when the line is tokenized, so the ROP of a
+ * row is found by comparing longs. The value is kept as text too, because it is written to the measurement file as
+ * it is in the source file.
+ *
+ */
+final class EpochtimePair extends NameValuePair {
+
+	private final long seconds;
+	private final boolean numeric;
+
+	EpochtimePair(final String name, final String value) {
+		super(name, value);
+		long parsed = 0;
+		boolean valid = true;
+		try {
+			parsed = Long.parseLong(value);
+		} catch (final NumberFormatException e) {
+			// Not thrown here, the line is only failed if its epochtime is needed
+			valid = false;
+		}
+		this.seconds = parsed;
+		this.numeric = valid;
+	}
+
+	/**
+	 * @return epochtime in seconds
+	 * @throws NumberFormatException
+	 *             if the value is not a number
+	 */
+	long seconds() {
+		if (!numeric) {
+			throw new NumberFormatException("For input string: \"" + m_value + "\"");
+		}
+		return seconds;
+	}
+
+	/**
+	 * @param list
+	 *            parsed fields of a line or record
+	 * @return the first epochtime field of list, or the first field if list has no EpochtimePair (rows that were not
+	 *         made by the tokenizer)
+	 */
+	static NameValuePair find(final List<NameValuePair> list) {
+		for (int i = 0; i < list.size(); i++) {
+			if (list.get(i) instanceof EpochtimePair) {
+				return list.get(i);
+			}
+		}
+		return list.get(0);
+	}
+
+	/**
+	 * @return epochtime of pair in seconds
+	 * @throws NumberFormatException
+	 *             if the value is not a number
+	 */
+	static long seconds(final NameValuePair pair) {
+		if (pair instanceof EpochtimePair) {
+			return ((EpochtimePair) pair).seconds();
+		}
+		return Long.parseLong(pair.m_value);
+	}
+}
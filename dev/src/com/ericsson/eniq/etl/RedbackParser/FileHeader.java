@@ -0,0 +1,61 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+
+/**
+ * File level columns of the rows of one Redback PM file: DATETIME_ID, filename, DC_SUSPECTFLAG, DIRNAME, JVM_TIMEZONE
+ * and vendorID. The values are the same for every row, so they are computed once before the rows of the file are
+ * written. The header is immutable.
+ *
+ */
+final class FileHeader {
+
+	private static final String[] NAMES = { "DATETIME_ID", "filename", "DC_SUSPECTFLAG", "DIRNAME", "JVM_TIMEZONE",
+			"vendorID" };
+
+	private final String[] values;
+
+	/**
+	 * @param datetimeId
+	 *            DATETIME_ID of the file (yyyyMMddHHmmss)
+	 * @param filename
+	 *            name of the source file
+	 * @param dirname
+	 *            directory of the source file
+	 * @param jvmTimezone
+	 *            timezone of the JVM (for example +0200)
+	 * @param vendorId
+	 *            tag_id of the file
+	 */
+	FileHeader(final String datetimeId, final String filename, final String dirname, final String jvmTimezone,
+			final String vendorId) {
+		this.values = new String[] { datetimeId, filename, "", dirname, jvmTimezone, vendorId };
+	}
+
+	String getDatetimeId() {
+		return values[0];
+	}
+
+	/**
+	 * @return names of the columns
+	 */
+	String[] names() {
+		return NAMES.clone();
+	}
+
+	/**
+	 * @return values of the columns, in the order of names
+	 */
+	String[] values() {
+		return values.clone();
+	}
+
+	/**
+	 * Adds the columns to the current row of mFile.
+	 */
+	void addTo(final MeasurementFile mFile) {
+		for (int i = 0; i < NAMES.length; i++) {
+			mFile.addData(NAMES[i], values[i]);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+/**
+ * Metrics of the parsing of one Redback PM file.<br>
+ * <br>
+ * The parse time is split into phases. The parser tells when it moves to another phase, and the time since the
+ * previous move is added to the phase it leaves, so one clock read is taken per move. The metrics of a file are
+ * final once the file is done and they are given to the MetricsExporters.
+ *
+ */
+public final class FileMetrics {
+
+	/**
+	 * Phases of the parsing of a file
+	 */
+	public enum Phase {
+		/** Reading and tokenizing the lines */
+		READ,
+		/** Checking the group keys of the lines */
+		VALIDATE,
+		/** Merging the lines into the records of their ROP */
+		MERGE,
+		/** Writing the records to the measurement file */
+		EMIT
+	}
+
+	private final long[] phaseNanos = new long[Phase.values().length];
+	private Phase phase = Phase.READ;
+	private long mark;
+	private long startNanos;
+	private long totalNanos = 0;
+
+	String filename = null;
+	String policy = null;
+	long bytes = 0;
+	long lines = 0;
+	long skippedLines = 0;
+	long rows = 0;
+	long counters = 0;
+	int extraRops = 0;
+	boolean failed = false;
+
+	FileMetrics() {
+		startNanos = System.nanoTime();
+		mark = startNanos;
+	}
+
+	/**
+	 * Starts the clock of the file, in phase READ.
+	 */
+	void start(final String filename, final long bytes) {
+		this.filename = filename;
+		this.bytes = bytes;
+		startNanos = System.nanoTime();
+		mark = startNanos;
+		phase = Phase.READ;
+	}
+
+	/**
+	 * Moves to phase next. The time since the previous move is added to the current phase.
+	 * 
+	 * @return the phase that was left
+	 */
+	Phase enter(final Phase next) {
+		final long now = System.nanoTime();
+		phaseNanos[phase.ordinal()] += now - mark;
+		mark = now;
+		final Phase previous = phase;
+		phase = next;
+		return previous;
+	}
+
+	/**
+	 * Stops the clock of the file.
+	 */
+	void finish() {
+		enter(phase);
+		totalNanos = mark - startNanos;
+	}
+
+	public String getFilename() {
+		return filename;
+	}
+
+	/**
+	 * @return tag_id of the file
+	 */
+	public String getPolicy() {
+		return policy;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return data lines read, class counter continuation lines are not counted
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return data lines skipped because of missing group keys or an unexpected table format
+	 */
+	public long getSkippedLines() {
+		return skippedLines;
+	}
+
+	/**
+	 * @return rows saved to the measurement file
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return counter values written to the measurement file
+	 */
+	public long getCounters() {
+		return counters;
+	}
+
+	/**
+	 * @return ROPs found in the file after the first one
+	 */
+	public int getExtraRops() {
+		return extraRops;
+	}
+
+	/**
+	 * @return true if the parsing of the file failed
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	public long getPhaseNanos(final Phase p) {
+		return phaseNanos[p.ordinal()];
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * @return parse throughput of the file in bytes/ms
+	 */
+	public long getBytesPerMs() {
+		return (totalNanos < 1000000) ? bytes : bytes * 1000000 / totalNanos;
+	}
+}
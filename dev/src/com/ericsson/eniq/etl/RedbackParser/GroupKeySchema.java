@@ -0,0 +1,190 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled group keys of one Redback policy.<br>
+ * <br>
+ * The schema maps the lowercased name of every group key to its slot (position in the group key list), so the group
+ * keys of a parsed line can be found with one pass over its fields and one hash lookup per field. The group keys of a
+ * schema do not change, and schemas are cached by tag_id and the value of interface property
+ * redback.groupKeys.&lt;tag_id&gt;, so they are only compiled for the first file of each policy. A changed property
+ * value gets a new schema. The schema also collects the counter names and the largest ROP size of the policy from the parsed files.
+ *
+ */
+final class GroupKeySchema {
+
+	private static final Map<String, GroupKeySchema> CACHE = new ConcurrentHashMap<String, GroupKeySchema>();
+
+	private final String policyName;
+	private final String[] groupKeys;
+	private final String[] nullableKeys;
+	private final Map<String, Integer> slots;
+	// Counter names of the policy, shared by all records of all files of the policy
+	private final CounterDictionary counters = new CounterDictionary();
+	// One bit per group key slot that must be present in a line
+	private final int requiredSlots;
+	// Largest number of records in one ROP of the files parsed so far, used to presize the ROP store
+	private volatile int ropSize = 0;
+
+	/**
+	 * @param policyName
+	 *            name of the policy
+	 * @param groupKeys
+	 *            group keys of the policy, in key order
+	 * @param nullableKeys
+	 *            group keys that may be missing from a line
+	 * @throws IllegalArgumentException
+	 *             if there are more than 31 group keys, or a group key is empty or given twice (case is not
+	 *             significant)
+	 */
+	GroupKeySchema(final String policyName, final String[] groupKeys, final String[] nullableKeys) {
+		if (groupKeys.length > 31) {
+			throw new IllegalArgumentException("Too many group keys in policy " + policyName);
+		}
+		this.policyName = policyName;
+		this.groupKeys = groupKeys.clone();
+		this.nullableKeys = nullableKeys.clone();
+		this.slots = new HashMap<String, Integer>();
+		int required = 0;
+		for (int slot = 0; slot < groupKeys.length; slot++) {
+			final String lowerCaseKey = groupKeys[slot].toLowerCase(Locale.ENGLISH);
+			if (lowerCaseKey.length() == 0) {
+				throw new IllegalArgumentException("Empty group key in policy " + policyName);
+			}
+			if (slots.put(lowerCaseKey, slot) != null) {
+				// A line can not fill both slots of the key, so no record of the policy would be complete
+				throw new IllegalArgumentException("Group key " + groupKeys[slot] + " given twice in policy "
+						+ policyName);
+			}
+			boolean nullable = false;
+			for (final String nullableKey : nullableKeys) {
+				if (nullableKey.equalsIgnoreCase(groupKeys[slot])) {
+					nullable = true;
+				}
+			}
+			if (!nullable) {
+				required |= 1 << slot;
+			}
+		}
+		this.requiredSlots = required;
+	}
+
+	/**
+	 * @param groupKeysProperty
+	 *            value of interface property redback.groupKeys.&lt;tag_id&gt;, null if not set
+	 * @return cached schema of tag_id or null if it has not been compiled yet
+	 */
+	static GroupKeySchema cached(final String tagId, final String groupKeysProperty) {
+		return CACHE.get(tagId + '\n' + groupKeysProperty);
+	}
+
+	/**
+	 * Adds the schema of tag_id to the cache.
+	 * 
+	 * @param groupKeysProperty
+	 *            value of interface property redback.groupKeys.&lt;tag_id&gt;, null if not set
+	 */
+	static void cache(final String tagId, final String groupKeysProperty, final GroupKeySchema schema) {
+		CACHE.put(tagId + '\n' + groupKeysProperty, schema);
+	}
+
+	String getPolicyName() {
+		return policyName;
+	}
+
+	String[] getGroupKeys() {
+		return groupKeys.clone();
+	}
+
+	String[] getNullableKeys() {
+		return nullableKeys.clone();
+	}
+
+	CounterDictionary getCounters() {
+		return counters;
+	}
+
+	int size() {
+		return groupKeys.length;
+	}
+
+	/**
+	 * @return largest number of records found in one ROP of the policy so far
+	 */
+	int getRopSize() {
+		return ropSize;
+	}
+
+	/**
+	 * Updates the largest ROP size of the policy with the number of records of a completed ROP.
+	 */
+	void ropCompleted(final int records) {
+		// Lost updates of parallel files only make the hint smaller for a while
+		if (records > ropSize) {
+			ropSize = records;
+		}
+	}
+
+	/**
+	 * @param name
+	 *            field name, case is ignored
+	 * @return slot of the group key or -1 if name is not a group key
+	 */
+	int slotOf(final String name) {
+		Integer slot = slots.get(name);
+		if (slot == null) {
+			slot = slots.get(name.toLowerCase(Locale.ENGLISH));
+		}
+		return (slot == null) ? -1 : slot;
+	}
+
+	/**
+	 * Checks that all group keys that are not nullable are found in list.
+	 *
+	 * @param list
+	 *            parsed fields of a line
+	 * @return true if the group keys are valid
+	 */
+	boolean hasGroupKeys(final List<NameValuePair> list) {
+		if (list.size() < groupKeys.length - nullableKeys.length) {
+			return false;
+		}
+		int found = 0;
+		for (final NameValuePair pair : list) {
+			final int slot = slotOf(pair.m_name);
+			if (slot >= 0) {
+				found |= 1 << slot;
+			}
+		}
+		return (found & requiredSlots) == requiredSlots;
+	}
+
+	/**
+	 * Makes the record key of the fields of list starting from index from. The key holds the values of the group key
+	 * fields by slot. If a group key is found more than once, the first value is used.
+	 *
+	 * @param list
+	 *            parsed fields of a line or record
+	 * @param from
+	 *            index of the first field that is looked at
+	 * @return record key
+	 */
+	RecordKey buildKey(final List<NameValuePair> list, final int from) {
+		final String[] values = new String[groupKeys.length];
+		int found = 0;
+		for (int i = from; i < list.size(); i++) {
+			final NameValuePair pair = list.get(i);
+			final int slot = slotOf(pair.m_name);
+			if (slot >= 0 && (found & (1 << slot)) == 0) {
+				values[slot] = pair.m_value;
+				found |= 1 << slot;
+			}
+		}
+		return new RecordKey(values);
+	}
+}
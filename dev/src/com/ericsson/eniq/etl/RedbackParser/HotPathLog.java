@@ -0,0 +1,111 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logging of the per line, per field and per counter hot paths of the parser.<br>
+ * <br>
+ * Hot path messages are only built when they are logged, so every call site is guarded:
+ * 
+ * <pre>
+ * if (trace.traced()) {
+ * 	trace.log(&quot;data element: &quot; + name + &quot; = &quot; + value);
+ * }
+ * </pre>
+ * 
+ * The level of the logger is checked once per file, not once per message. A row (data line or record) is traced
+ * when the logger is at FINEST, and then the messages are logged at FINEST as before. With a sample interval N &gt;
+ * 0 (interface property redback.logSampleInterval) about one row in N is traced at INFO level, so single rows can be
+ * looked at in production without logging every counter of the file.<br>
+ * <br>
+ * If the JVM is started with -Dredback.hotPathLog=false, ENABLED is false and the JIT compiler removes the guarded
+ * hot path logging from the compiled code.
+ *
+ */
+final class HotPathLog {
+
+	static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("redback.hotPathLog"));
+
+	/** Does not trace anything */
+	static final HotPathLog OFF = new HotPathLog(null, 0);
+
+	private final Logger log;
+	private final boolean finest;
+	private final int sampleInterval;
+	private int rowCount = 0;
+	private boolean traced = false;
+
+	/**
+	 * @param log
+	 *            logger of the parser
+	 * @param sampleInterval
+	 *            one row in sampleInterval is traced at INFO level, 0 if rows are not sampled
+	 */
+	HotPathLog(final Logger log, final int sampleInterval) {
+		this.log = log;
+		this.finest = ENABLED && (log != null) && log.isLoggable(Level.FINEST);
+		this.sampleInterval = (ENABLED && (log != null)) ? sampleInterval : 0;
+	}
+
+	/**
+	 * @return new HotPathLog with the same logger and sample interval, for parsing a part of the file in another
+	 *         thread
+	 */
+	HotPathLog copy() {
+		return (log == null) ? OFF : new HotPathLog(log, sampleInterval);
+	}
+
+	/**
+	 * @return true if hot path messages of log are logged at FINEST, for call sites without a per file HotPathLog
+	 */
+	static boolean finest(final Logger log) {
+		return ENABLED && log.isLoggable(Level.FINEST);
+	}
+
+	/**
+	 * Starts the next row (data line or record).
+	 * 
+	 * @return true if the messages of the row are logged
+	 */
+	boolean nextRow() {
+		if (finest) {
+			traced = true;
+		} else if (sampleInterval > 0 && ++rowCount >= sampleInterval) {
+			rowCount = 0;
+			traced = true;
+		} else {
+			traced = false;
+		}
+		return traced;
+	}
+
+	/**
+	 * @return true if the messages of the current row are logged
+	 */
+	boolean traced() {
+		return traced;
+	}
+
+	/**
+	 * Logs a message of the current row. Only called when traced() is true.
+	 */
+	void log(final String message) {
+		log.log(finest ? Level.FINEST : Level.INFO, message);
+	}
+
+	/**
+	 * @return pairs as key=value, key=value...
+	 */
+	static String toString(final List<NameValuePair> pairs) {
+		final StringBuilder sb = new StringBuilder(pairs.size() * 24);
+		for (final NameValuePair pair : pairs) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(pair.m_name).append('=').append(pair.m_value);
+		}
+		return sb.toString();
+	}
+}
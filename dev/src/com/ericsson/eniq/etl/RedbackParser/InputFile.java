@@ -0,0 +1,24 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.io.InputStream;
+
+/**
+ * Source file as seen by RedbackParser. In ENIQ it is a SourceFile given by Main (see MainParserHost), the load test
+ * harness gives generated files.
+ *
+ */
+interface InputFile {
+
+	String getName();
+
+	String getDir();
+
+	/**
+	 * @return value of the interface property or defaultValue if it is not set
+	 */
+	String getProperty(String name, String defaultValue) throws Exception;
+
+	InputStream getFileInputStream() throws Exception;
+
+	long fileSize() throws Exception;
+}
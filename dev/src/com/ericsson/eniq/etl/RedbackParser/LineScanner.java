@@ -0,0 +1,117 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads delimited text lines from a reader into a reusable char buffer.<br>
+ * <br>
+ * The scanner keeps a cursor into the buffer, so each call to readLine only looks at the characters of the line
+ * being returned. Unread characters are moved to the start of the buffer before the next block is read, and the
+ * buffer only grows when a single line does not fit into it, or when reset asks for a larger buffer. The same
+ * scanner (and its buffer) can be reused for the next file by calling reset.<br>
+ * <br>
+ * Text after the last delimiter of the input is not returned as a line.
+ *
+ */
+class LineScanner implements LineSource {
+
+	private Reader reader;
+	private char[] buffer;
+	// Index of the first char of the next line
+	private int start = 0;
+	// Number of valid chars in buffer
+	private int end = 0;
+	private boolean eof = false;
+
+	LineScanner(final int bufferSize) {
+		this.buffer = new char[bufferSize];
+	}
+
+	/**
+	 * Starts scanning a new input. The char buffer is kept.
+	 *
+	 * @param reader
+	 *            input to read the lines from
+	 */
+	void reset(final Reader reader) {
+		reset(reader, 0);
+	}
+
+	/**
+	 * Starts scanning a new input. The char buffer is kept, and it is replaced by a larger one if it is smaller than
+	 * bufferSize.
+	 *
+	 * @param reader
+	 *            input to read the lines from
+	 * @param bufferSize
+	 *            number of chars that should be read from reader at once
+	 */
+	void reset(final Reader reader, final int bufferSize) {
+		if (buffer.length < bufferSize) {
+			buffer = new char[bufferSize];
+		}
+		this.reader = reader;
+		this.start = 0;
+		this.end = 0;
+		this.eof = false;
+	}
+
+	@Override
+	public String readLine(final String delimiter, final int delimiterLength) throws IOException {
+		int searchFrom = start;
+		while (true) {
+			final int found = indexOf(delimiter, searchFrom);
+			if (found >= 0) {
+				final String line = new String(buffer, start, found - start);
+				start = Math.min(found + delimiterLength, end);
+				return line;
+			}
+			if (eof) {
+				return null;
+			}
+			// The delimiter may start in the chars already scanned, so step back by its length.
+			final int scanned = Math.max(end - delimiter.length() + 1, start) - start;
+			fill();
+			searchFrom = start + scanned;
+		}
+	}
+
+	private int indexOf(final String delimiter, final int from) {
+		final int length = delimiter.length();
+		final int last = end - length;
+		for (int i = from; i <= last; i++) {
+			int j = 0;
+			while (j < length && buffer[i + j] == delimiter.charAt(j)) {
+				j++;
+			}
+			if (j == length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Reads the next block from the reader. The unread chars are moved to the start of the buffer first, and the
+	 * buffer is doubled if it is full of one unfinished line.
+	 */
+	private void fill() throws IOException {
+		if (start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, end - start);
+			end -= start;
+			start = 0;
+		}
+		if (end == buffer.length) {
+			final char[] larger = new char[buffer.length * 2];
+			System.arraycopy(buffer, 0, larger, 0, end);
+			buffer = larger;
+		}
+		final int count = reader.read(buffer, end, buffer.length - end);
+		if (count == -1) {
+			eof = true;
+		} else {
+			end += count;
+		}
+	}
+}
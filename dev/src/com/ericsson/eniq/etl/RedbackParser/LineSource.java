@@ -0,0 +1,22 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.io.IOException;
+
+/**
+ * Source of the delimited text lines of one Redback PM file.
+ *
+ */
+interface LineSource {
+
+	/**
+	 * Returns the text up to the next delimiter and moves past the delimiter.
+	 *
+	 * @param delimiter
+	 *            row delimiter
+	 * @param delimiterLength
+	 *            number of chars that are skipped after the returned line
+	 * @return read text line or null if no more delimited lines are available
+	 * @throws IOException
+	 */
+	String readLine(String delimiter, int delimiterLength) throws IOException;
+}
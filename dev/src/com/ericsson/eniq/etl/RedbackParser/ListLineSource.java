@@ -0,0 +1,32 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lines of a part of a Redback PM file that have already been read, returned in order.
+ *
+ */
+class ListLineSource implements LineSource {
+
+	private final List<String> lines = new ArrayList<String>();
+	private int next = 0;
+	private long length = 0;
+
+	void add(final String line) {
+		lines.add(line);
+		length += line.length() + 1;
+	}
+
+	/**
+	 * @return chars in the lines added, with one delimiter per line
+	 */
+	long length() {
+		return length;
+	}
+
+	@Override
+	public String readLine(final String delimiter, final int delimiterLength) {
+		return (next < lines.size()) ? lines.get(next++) : null;
+	}
+}
@@ -0,0 +1,33 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.logging.Logger;
+
+import com.ericsson.eniq.etl.RedbackParser.FileMetrics.Phase;
+
+/**
+ * MetricsExporter that logs one INFO line of the metrics of every file to logger etl.Redback.metrics.
+ *
+ */
+public final class LogMetricsExporter implements MetricsExporter {
+
+	private static final Logger LOG = Logger.getLogger("etl.Redback.metrics");
+
+	@Override
+	public void export(final FileMetrics metrics) {
+		final StringBuilder sb = new StringBuilder(256);
+		sb.append(metrics.getPolicy()).append(' ').append(metrics.getFilename());
+		if (metrics.isFailed()) {
+			sb.append(" FAILED");
+		}
+		sb.append(" :: ").append(metrics.getTotalNanos() / 1000000).append(" ms (");
+		for (final Phase phase : Phase.values()) {
+			sb.append(phase.name().toLowerCase()).append(' ').append(metrics.getPhaseNanos(phase) / 1000000)
+					.append(phase == Phase.EMIT ? " ms)" : " ms, ");
+		}
+		sb.append(", ").append(metrics.getBytes()).append(" bytes, ").append(metrics.getBytesPerMs())
+				.append(" bytes/ms, ").append(metrics.getLines()).append(" lines, ").append(metrics.getSkippedLines())
+				.append(" skipped, ").append(metrics.getRows()).append(" rows, ").append(metrics.getCounters())
+				.append(" counters, ").append(metrics.getExtraRops()).append(" extra ROPs");
+		LOG.info(sb.toString());
+	}
+}
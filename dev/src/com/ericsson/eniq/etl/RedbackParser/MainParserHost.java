@@ -0,0 +1,96 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.io.InputStream;
+import java.util.logging.Logger;
+
+import com.distocraft.dc5000.etl.parser.Main;
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+import com.distocraft.dc5000.etl.parser.SourceFile;
+
+/**
+ * ParserHost of ENIQ: the source files and callbacks of Main. Main is not known to be thread safe, so the calls to it
+ * are serialized; in a worker pool only the parsing of the files runs in parallel.
+ *
+ */
+final class MainParserHost implements ParserHost {
+
+	private final Main main;
+
+	MainParserHost(final Main main) {
+		this.main = main;
+	}
+
+	@Override
+	public synchronized InputFile nextSourceFile() throws Exception {
+		final SourceFile sf = main.nextSourceFile();
+		return (sf == null) ? null : new SourceFileInput(sf);
+	}
+
+	@Override
+	public synchronized void preParse(final InputFile sf) throws Exception {
+		main.preParse(sourceFile(sf));
+	}
+
+	@Override
+	public synchronized void postParse(final InputFile sf) throws Exception {
+		main.postParse(sourceFile(sf));
+	}
+
+	@Override
+	public synchronized void errorParse(final Exception e, final InputFile sf) throws Exception {
+		main.errorParse(e, sourceFile(sf));
+	}
+
+	@Override
+	public synchronized void finallyParse(final InputFile sf) throws Exception {
+		main.finallyParse(sourceFile(sf));
+	}
+
+	@Override
+	public synchronized MeasurementFile createMeasurementFile(final InputFile sf, final String tagId,
+			final String techPack, final String setType, final String setName, final String workerName, final Logger log)
+			throws Exception {
+		return Main.createMeasurementFile(sourceFile(sf), tagId, techPack, setType, setName, workerName, log);
+	}
+
+	private static SourceFile sourceFile(final InputFile sf) {
+		return ((SourceFileInput) sf).sf;
+	}
+
+	/**
+	 * InputFile of an ENIQ SourceFile
+	 */
+	static final class SourceFileInput implements InputFile {
+
+		private final SourceFile sf;
+
+		SourceFileInput(final SourceFile sf) {
+			this.sf = sf;
+		}
+
+		@Override
+		public String getName() {
+			return sf.getName();
+		}
+
+		@Override
+		public String getDir() {
+			return sf.getDir();
+		}
+
+		@Override
+		public String getProperty(final String name, final String defaultValue) throws Exception {
+			return sf.getProperty(name, defaultValue);
+		}
+
+		@Override
+		public InputStream getFileInputStream() throws Exception {
+			return sf.getFileInputStream();
+		}
+
+		@Override
+		public long fileSize() throws Exception {
+			return sf.fileSize();
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Reads delimited text lines straight from the bytes of a memory mapped Redback PM file.<br>
+ * <br>
+ * Row delimiters are searched for in the bytes, so nothing is decoded while scanning. readLineView returns a
+ * CharSequence view of the line over the mapped bytes, where every byte is seen as one char. Redback files are ASCII,
+ * and the delimiters used by the parser are ASCII, so the view can be tokenized without decoding. Only the
+ * subsequences taken from the view (the keys and values of the counters) are decoded into Strings, using the charset
+ * given in reset.<br>
+ * <br>
+ * Text after the last delimiter of the input is not returned as a line.
+ *
+ */
+class MappedLineScanner implements LineSource {
+
+	private ByteBuffer buffer;
+	private Charset charset;
+	private final ByteLine line = new ByteLine();
+	// Scratch array for decoding, grows to the longest decoded subsequence
+	private byte[] decodeBuffer = new byte[256];
+
+	/**
+	 * Starts scanning a new mapped file.
+	 *
+	 * @param buffer
+	 *            mapped file content
+	 * @param charset
+	 *            charset used when decoding keys, values and lines into Strings
+	 */
+	void reset(final ByteBuffer buffer, final Charset charset) {
+		this.buffer = buffer;
+		this.charset = charset;
+	}
+
+	@Override
+	public String readLine(final String delimiter, final int delimiterLength) {
+		final CharSequence view = readLineView(delimiter, delimiterLength);
+		return (view == null) ? null : view.toString();
+	}
+
+	/**
+	 * Returns a view of the bytes up to the next delimiter and moves past the delimiter. The returned view is reused,
+	 * and it is only valid until the next call to this scanner.
+	 *
+	 * @param delimiter
+	 *            row delimiter (ASCII)
+	 * @param delimiterLength
+	 *            number of bytes that are skipped after the returned line
+	 * @return line view or null if no more delimited lines are available
+	 */
+	CharSequence readLineView(final String delimiter, final int delimiterLength) {
+		final int start = buffer.position();
+		final int found = indexOf(delimiter, start);
+		if (found < 0) {
+			return null;
+		}
+		buffer.position(Math.min(found + delimiterLength, buffer.limit()));
+		line.set(start, found);
+		return line;
+	}
+
+	/**
+	 * Splits the next chunk off the unread part of the file. The chunk holds at least size bytes (unless the file ends
+	 * first) and ends at a line boundary. The scanner moves past the chunk.
+	 * 
+	 * @param size
+	 *            minimum number of bytes in the chunk
+	 * @param delimiter
+	 *            row delimiter (ASCII)
+	 * @param lineStart
+	 *            if not null, the line after the chunk must contain this text (ASCII), so lines that belong together
+	 *            are kept in the same chunk
+	 * @return scanner of the lines of the chunk, or null if all of the file has been read
+	 */
+	MappedLineScanner nextChunk(final int size, final String delimiter, final String lineStart) {
+		final int start = buffer.position();
+		if (start >= buffer.limit()) {
+			return null;
+		}
+		int end = nextLine(delimiter, (int) Math.min((long) start + size, buffer.limit()));
+		if (lineStart != null) {
+			while (end < buffer.limit() && !lineContains(end, delimiter, lineStart)) {
+				end = nextLine(delimiter, end + 1);
+			}
+		}
+		final ByteBuffer chunkBuffer = buffer.duplicate();
+		chunkBuffer.limit(end);
+		buffer.position(end);
+		final MappedLineScanner chunk = new MappedLineScanner();
+		chunk.reset(chunkBuffer, charset);
+		return chunk;
+	}
+
+	/**
+	 * @return start of the first line that starts after from - 1, or the limit of the buffer
+	 */
+	private int nextLine(final String delimiter, final int from) {
+		if (from >= buffer.limit()) {
+			return buffer.limit();
+		}
+		final int found = indexOf(delimiter, from - 1);
+		return (found < 0) ? buffer.limit() : Math.min(found + delimiter.length(), buffer.limit());
+	}
+
+	private boolean lineContains(final int lineStart, final String delimiter, final String text) {
+		int lineEnd = indexOf(delimiter, lineStart);
+		if (lineEnd < 0) {
+			lineEnd = buffer.limit();
+		}
+		final int last = lineEnd - text.length();
+		for (int i = lineStart; i <= last; i++) {
+			int j = 0;
+			while (j < text.length() && buffer.get(i + j) == text.charAt(j)) {
+				j++;
+			}
+			if (j == text.length()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int indexOf(final String delimiter, final int from) {
+		final int length = delimiter.length();
+		final int last = buffer.limit() - length;
+		for (int i = from; i <= last; i++) {
+			int j = 0;
+			while (j < length && buffer.get(i + j) == delimiter.charAt(j)) {
+				j++;
+			}
+			if (j == length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private String decode(final int from, final int to) {
+		final int length = to - from;
+		if (decodeBuffer.length < length) {
+			decodeBuffer = new byte[Math.max(length, decodeBuffer.length * 2)];
+		}
+		for (int i = 0; i < length; i++) {
+			decodeBuffer[i] = buffer.get(from + i);
+		}
+		return new String(decodeBuffer, 0, length, charset);
+	}
+
+	/**
+	 * View of one line of the mapped file. Indexes are byte offsets from the start of the line.
+	 */
+	private class ByteLine implements CharSequence {
+
+		private int from;
+		private int to;
+
+		void set(final int from, final int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public int length() {
+			return to - from;
+		}
+
+		@Override
+		public char charAt(final int index) {
+			return (char) (buffer.get(from + index) & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(final int start, final int end) {
+			return decode(from + start, from + end);
+		}
+
+		@Override
+		public String toString() {
+			return decode(from, to);
+		}
+	}
+}
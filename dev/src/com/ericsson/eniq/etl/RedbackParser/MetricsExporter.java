@@ -0,0 +1,19 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+/**
+ * Receives the metrics of every parsed file. Exporters are named in interface property redback.metricsExporters and
+ * created with their public no argument constructor, one instance per parser worker. export is called by the
+ * thread that parsed the file, so with redback.workerPoolSize &gt; 1 it is called by several threads at the same
+ * time.
+ *
+ */
+public interface MetricsExporter {
+
+	/**
+	 * @param metrics
+	 *            metrics of a parsed file, not changed after the call
+	 * @throws Exception
+	 *             the failure is logged, parsing goes on
+	 */
+	void export(FileMetrics metrics) throws Exception;
+}
@@ -0,0 +1,68 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Parse metrics of all policies in this JVM. The metrics of each policy are registered to the platform MBean server
+ * as com.ericsson.eniq.etl.RedbackParser:type=ParseMetrics,policy=&lt;tag_id&gt; when its first file is done.
+ *
+ */
+final class MetricsRegistry {
+
+	static final String DOMAIN = "com.ericsson.eniq.etl.RedbackParser";
+
+	private static final Map<String, PolicyMetrics> POLICIES = new ConcurrentHashMap<String, PolicyMetrics>();
+
+	private MetricsRegistry() {
+	}
+
+	/**
+	 * Adds the metrics of a parsed file to the metrics of its policy.
+	 */
+	static void record(final FileMetrics metrics, final Logger log) {
+		policy(String.valueOf(metrics.getPolicy()), log).add(metrics);
+	}
+
+	/**
+	 * @return metrics of policy, created and registered to JMX if not found
+	 */
+	static PolicyMetrics policy(final String policy, final Logger log) {
+		PolicyMetrics metrics = POLICIES.get(policy);
+		if (metrics == null) {
+			synchronized (POLICIES) {
+				metrics = POLICIES.get(policy);
+				if (metrics == null) {
+					metrics = new PolicyMetrics();
+					register(policy, metrics, log);
+					POLICIES.put(policy, metrics);
+				}
+			}
+		}
+		return metrics;
+	}
+
+	static ObjectName objectName(final String policy) throws Exception {
+		return new ObjectName(DOMAIN + ":type=ParseMetrics,policy=" + ObjectName.quote(policy));
+	}
+
+	private static void register(final String policy, final PolicyMetrics metrics, final Logger log) {
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final ObjectName name = objectName(policy);
+			if (server.isRegistered(name)) {
+				// Left by an earlier class loader of the parser
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(metrics, name);
+		} catch (final Exception e) {
+			log.log(Level.WARNING, "Parse metrics of " + policy + " not available in JMX", e);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+
+/**
+ * Parse state of one Redback PM file.<br>
+ * <br>
+ * RedbackParser keeps a pool of contexts and takes one for each file it parses, so one parser instance can parse
+ * several files at the same time. A context is reset when its file is done and then reused for the next file, so the
+ * line scanner buffers, the tokenizer, the table row matcher and the data store maps are not allocated again for every file.
+ *
+ */
+final class ParseContext {
+
+	// Kept between files
+	final LineScanner lineScanner;
+	final MappedLineScanner mappedLineScanner = new MappedLineScanner();
+	RecordTokenizer recordTokenizer = null;
+	ArrayList<String> tableFormatPolicyList = null;
+	// Matcher of table rows, reset for every row and reused while the table format does not change
+	Matcher tableMatcher = null;
+
+	// State of the file being parsed
+	String filename = null;
+	/*CR-145 The group keys of data being parsed.Class group are introduced which will be combined with policy keys
+	if class exist*/
+	String[] groupKeys = null;
+	GroupKeySchema groupKeySchema = null;
+	String policyName = null;
+	// Value of interface property redback.groupKeys.<tag_id>
+	String groupKeysProperty = null;
+	// This stores the PM data for one Redback PM file: the completed ROP partitions, by ROP start
+	final Map<Long, Map<RecordKey, RopRecord>> m_dataStoreMap = new HashMap<Long, Map<RecordKey, RopRecord>>();
+	// ROPs of the file that are being collected, by ROP start (epochtime rounded down to the ROP length)
+	final Map<Long, Map<RecordKey, RopRecord>> ropPartitions = new HashMap<Long, Map<RecordKey, RopRecord>>();
+	// Start of the latest ROP found in the file
+	long latestRop = Long.MIN_VALUE;
+	// Starts of the ROPs that have been written in streaming mode, later lines of them are skipped
+	final Set<Long> emittedRops = new HashSet<Long>();
+	// Number of ROPs found in the file
+	int ropCount = 0;
+	// Partition of the first ROP of every file, kept for the next files. Replaced by a larger map in presizeRopStore.
+	private Map<RecordKey, RopRecord> firstRopStore = new HashMap<RecordKey, RopRecord>();
+	// edeamai: this stores the PM data of 1 ROP, the partition of the latest ROP
+	Map<RecordKey, RopRecord> rop_dataStoreMap = firstRopStore;
+	// Number of records the ROP partitions are presized for
+	private int ropCapacity = 0;
+	// If true the records are written ordered by epochtime and key, else in the order of the hash maps
+	boolean sortedOutput = false;
+	// Writes the records of the file being parsed
+	RecordEmitter emitter = null;
+	// In streaming mode each completed ROP is written to the measurement file right away, not kept in m_dataStoreMap
+	boolean streamingOutput = false;
+	// Metrics of the file being parsed, a new instance for every file because they are given to the exporters
+	FileMetrics metrics = new FileMetrics();
+	// Logging of the lines and records of the file being parsed
+	HotPathLog trace = HotPathLog.OFF;
+	// Size of the chunks that are parsed in parallel, 0 if the file is parsed line by line
+	int chunkSize = 0;
+	// ROP length and timezone of the file (interface property redback.ropLength)
+	RopClock ropClock = null;
+
+	/**
+	 * @param bufferSize
+	 *            initial size of the line scanner buffer
+	 */
+	ParseContext(final int bufferSize) {
+		this.lineScanner = new LineScanner(bufferSize);
+	}
+
+	/**
+	 * Clears the state of the parsed file. The scanners, the tokenizer and the (empty) maps are kept for the next
+	 * file.
+	 */
+	void reset() {
+		filename = null;
+		groupKeys = null;
+		groupKeySchema = null;
+		policyName = null;
+		groupKeysProperty = null;
+		m_dataStoreMap.clear();
+		ropPartitions.clear();
+		latestRop = Long.MIN_VALUE;
+		emittedRops.clear();
+		ropCount = 0;
+		firstRopStore.clear();
+		rop_dataStoreMap = firstRopStore;
+		emitter = null;
+		streamingOutput = false;
+		sortedOutput = false;
+		metrics = new FileMetrics();
+		trace = HotPathLog.OFF;
+		chunkSize = 0;
+		ropClock = null;
+		lineScanner.reset(null);
+		mappedLineScanner.reset(null, null);
+	}
+
+	/**
+	 * Makes sure the ROP partitions can hold the given number of records without rehashing. The partition of the
+	 * first ROP is kept for the next files, so it is only replaced when a larger ROP is expected than before.
+	 * 
+	 * @param records
+	 *            expected number of records in one ROP, for example the largest ROP of the policy so far
+	 */
+	void presizeRopStore(final int records) {
+		if (records > ropCapacity && ropCount == 0) {
+			firstRopStore = new HashMap<RecordKey, RopRecord>(records + records / 3 + 1);
+			rop_dataStoreMap = firstRopStore;
+			ropCapacity = records;
+		}
+	}
+
+	/**
+	 * Finds the partition of a ROP. A partition is created when a ROP is found in the file for the first time, and
+	 * the partition of the latest ROP is also rop_dataStoreMap.
+	 * 
+	 * @param ropStart
+	 *            start of the ROP, epochtime rounded down to the ROP length
+	 * @return partition of the records of the ROP
+	 */
+	Map<RecordKey, RopRecord> ropPartition(final long ropStart) {
+		if (ropStart == latestRop) {
+			return rop_dataStoreMap;
+		}
+		Map<RecordKey, RopRecord> partition = ropPartitions.get(ropStart);
+		if (partition == null) {
+			partition = (ropCount == 0) ? firstRopStore : new HashMap<RecordKey, RopRecord>(ropCapacity + ropCapacity
+					/ 3 + 1);
+			ropPartitions.put(ropStart, partition);
+			ropCount++;
+		}
+		if (ropStart > latestRop) {
+			latestRop = ropStart;
+			rop_dataStoreMap = partition;
+		}
+		return partition;
+	}
+}
@@ -0,0 +1,34 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.logging.Logger;
+
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+
+/**
+ * Gives the source files to a RedbackParser worker, is told about the progress of each file and creates the
+ * measurement files. In ENIQ this is Main (see MainParserHost).<br>
+ * <br>
+ * nextSourceFile is only called by the worker thread. With interface property redback.workerPoolSize &gt; 1 the
+ * callbacks (preParse, postParse, errorParse, finallyParse) and createMeasurementFile are called from several pool
+ * threads at the same time, for different files, so they must be thread safe. The callbacks of one file are always
+ * called in order by one thread. If a callback fails the worker takes no more source files.
+ *
+ */
+interface ParserHost {
+
+	/**
+	 * @return next source file to parse or null if there are no more files
+	 */
+	InputFile nextSourceFile() throws Exception;
+
+	void preParse(InputFile sf) throws Exception;
+
+	void postParse(InputFile sf) throws Exception;
+
+	void errorParse(Exception e, InputFile sf) throws Exception;
+
+	void finallyParse(InputFile sf) throws Exception;
+
+	MeasurementFile createMeasurementFile(InputFile sf, String tagId, String techPack, String setType,
+			String setName, String workerName, Logger log) throws Exception;
+}
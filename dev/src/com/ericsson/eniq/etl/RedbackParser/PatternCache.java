@@ -0,0 +1,34 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Process wide cache of compiled regular expressions, keyed by the pattern string.<br>
+ * <br>
+ * Compiled patterns are immutable and shared by all parser threads. Dates are handled by RopClock, so no formatters
+ * are cached.
+ *
+ */
+final class PatternCache {
+
+	private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<String, Pattern>();
+
+	private PatternCache() {
+	}
+
+	/**
+	 * @param regex
+	 *            regular expression
+	 * @return compiled pattern of regex
+	 */
+	static Pattern pattern(final String regex) {
+		Pattern pattern = PATTERNS.get(regex);
+		if (pattern == null) {
+			pattern = Pattern.compile(regex);
+			PATTERNS.put(regex, pattern);
+		}
+		return pattern;
+	}
+}
@@ -0,0 +1,142 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import com.ericsson.eniq.etl.RedbackParser.FileMetrics.Phase;
+
+/**
+ * Parse metrics of one policy, summed from the FileMetrics of its files.
+ *
+ */
+final class PolicyMetrics implements PolicyMetricsMBean {
+
+	private static final long MILLI = 1000000L;
+
+	private long files;
+	private long failedFiles;
+	private long bytes;
+	private long lines;
+	private long skippedLines;
+	private long rows;
+	private long counters;
+	private long extraRops;
+	private final long[] phaseNanos = new long[Phase.values().length];
+	private long totalNanos;
+	private long lastFileNanos;
+	private String lastFilename;
+
+	synchronized void add(final FileMetrics metrics) {
+		files++;
+		if (metrics.isFailed()) {
+			failedFiles++;
+		}
+		bytes += metrics.getBytes();
+		lines += metrics.getLines();
+		skippedLines += metrics.getSkippedLines();
+		rows += metrics.getRows();
+		counters += metrics.getCounters();
+		extraRops += metrics.getExtraRops();
+		for (final Phase phase : Phase.values()) {
+			phaseNanos[phase.ordinal()] += metrics.getPhaseNanos(phase);
+		}
+		totalNanos += metrics.getTotalNanos();
+		lastFileNanos = metrics.getTotalNanos();
+		lastFilename = metrics.getFilename();
+	}
+
+	@Override
+	public synchronized long getFiles() {
+		return files;
+	}
+
+	@Override
+	public synchronized long getFailedFiles() {
+		return failedFiles;
+	}
+
+	@Override
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	@Override
+	public synchronized long getLines() {
+		return lines;
+	}
+
+	@Override
+	public synchronized long getSkippedLines() {
+		return skippedLines;
+	}
+
+	@Override
+	public synchronized long getRows() {
+		return rows;
+	}
+
+	@Override
+	public synchronized long getCounters() {
+		return counters;
+	}
+
+	@Override
+	public synchronized long getExtraRops() {
+		return extraRops;
+	}
+
+	@Override
+	public synchronized long getReadMillis() {
+		return phaseNanos[Phase.READ.ordinal()] / MILLI;
+	}
+
+	@Override
+	public synchronized long getValidateMillis() {
+		return phaseNanos[Phase.VALIDATE.ordinal()] / MILLI;
+	}
+
+	@Override
+	public synchronized long getMergeMillis() {
+		return phaseNanos[Phase.MERGE.ordinal()] / MILLI;
+	}
+
+	@Override
+	public synchronized long getEmitMillis() {
+		return phaseNanos[Phase.EMIT.ordinal()] / MILLI;
+	}
+
+	@Override
+	public synchronized long getTotalMillis() {
+		return totalNanos / MILLI;
+	}
+
+	@Override
+	public synchronized long getBytesPerMs() {
+		return (totalNanos < MILLI) ? bytes : bytes * MILLI / totalNanos;
+	}
+
+	@Override
+	public synchronized long getLastFileMillis() {
+		return lastFileNanos / MILLI;
+	}
+
+	@Override
+	public synchronized String getLastFilename() {
+		return lastFilename;
+	}
+
+	@Override
+	public synchronized void reset() {
+		files = 0;
+		failedFiles = 0;
+		bytes = 0;
+		lines = 0;
+		skippedLines = 0;
+		rows = 0;
+		counters = 0;
+		extraRops = 0;
+		for (int i = 0; i < phaseNanos.length; i++) {
+			phaseNanos[i] = 0;
+		}
+		totalNanos = 0;
+		lastFileNanos = 0;
+		lastFilename = null;
+	}
+}
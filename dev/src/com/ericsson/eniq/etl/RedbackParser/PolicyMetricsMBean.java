@@ -0,0 +1,46 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+/**
+ * JMX view of the parse metrics of one policy (tag_id), summed over all files parsed in this JVM since the start or
+ * the last reset. Times are in milliseconds.
+ *
+ */
+public interface PolicyMetricsMBean {
+
+	long getFiles();
+
+	long getFailedFiles();
+
+	long getBytes();
+
+	long getLines();
+
+	long getSkippedLines();
+
+	long getRows();
+
+	long getCounters();
+
+	long getExtraRops();
+
+	long getReadMillis();
+
+	long getValidateMillis();
+
+	long getMergeMillis();
+
+	long getEmitMillis();
+
+	long getTotalMillis();
+
+	long getBytesPerMs();
+
+	/**
+	 * @return parse time of the last file in milliseconds
+	 */
+	long getLastFileMillis();
+
+	String getLastFilename();
+
+	void reset();
+}
@@ -0,0 +1,145 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+
+/**
+ * Writes the records of one Redback PM file to its MeasurementFile. Each record is one row, holding the counters of
+ * the record and the file level columns of the FileHeader. (N/A) values are written as null.<br>
+ * <br>
+ * If the measurement file is a BatchMeasurementFile, the file level columns are given to it once and the rows are
+ * collected into batches that are saved with one call. flush must be called to save the last batch.
+ *
+ */
+class RecordEmitter {
+
+	private final MeasurementFile mFile;
+	private final FileHeader header;
+	private final FileMetrics metrics;
+	private final HotPathLog trace;
+	// Batched rows, null if the rows are written counter by counter
+	private final BatchMeasurementFile batchFile;
+	private final String[][] batchNames;
+	private final String[][] batchValues;
+	private int batched = 0;
+	private boolean constantDataSet = false;
+
+	/**
+	 * @param header
+	 *            file level columns, computed once for the file. If null (no DATETIME_ID), no rows are saved.
+	 * @param metrics
+	 *            metrics of the file, the written rows and counters are added to them
+	 * @param trace
+	 *            hot path logging of the file, each record is one row
+	 * @param batchSize
+	 *            number of rows saved with one call if mFile is a BatchMeasurementFile, 0 to write the rows counter by
+	 *            counter
+	 */
+	RecordEmitter(final MeasurementFile mFile, final FileHeader header, final FileMetrics metrics,
+			final HotPathLog trace, final int batchSize) {
+		this.mFile = mFile;
+		this.header = header;
+		this.metrics = metrics;
+		this.trace = trace;
+		if (batchSize > 0 && mFile instanceof BatchMeasurementFile) {
+			this.batchFile = (BatchMeasurementFile) mFile;
+			this.batchNames = new String[batchSize][];
+			this.batchValues = new String[batchSize][];
+		} else {
+			this.batchFile = null;
+			this.batchNames = null;
+			this.batchValues = null;
+		}
+	}
+
+	/**
+	 * Writes one record as a row to the measurement file. Nothing is written if no rows are saved (no header).
+	 *
+	 * @param record
+	 *            record to write
+	 * @throws Exception
+	 */
+	void emit(final RopRecord record) throws Exception {
+		if (header == null) {
+			return;
+		}
+		if (batchFile != null) {
+			emitBatched(record);
+			return;
+		}
+		final boolean traced = trace.nextRow();
+		for (int column = 0; column < record.columns(); column++) {
+			if (!record.has(column)) {
+				continue;
+			}
+			final String name = record.nameOf(column);
+			String value = record.valueOf(column);
+			if (value != null) {
+				if (value.equalsIgnoreCase("(N/A)")) {
+					value = null;
+				}
+			}
+
+			mFile.addData(name, value);
+			metrics.counters++;
+
+			if (traced) {
+				trace.log(" data element: " + name + " = " + value + " added to measurement file");
+			}
+		}
+		header.addTo(mFile);
+		mFile.saveData();
+		metrics.rows++;
+	}
+
+	/**
+	 * Adds the record as a row to the batch, and saves the batch if it is full.
+	 */
+	private void emitBatched(final RopRecord record) throws Exception {
+		final boolean traced = trace.nextRow();
+		final String[] names = new String[record.size()];
+		final String[] values = new String[names.length];
+		int i = 0;
+		for (int column = 0; column < record.columns(); column++) {
+			if (!record.has(column)) {
+				continue;
+			}
+			names[i] = record.nameOf(column);
+			final String value = record.valueOf(column);
+			values[i] = (value != null && value.equalsIgnoreCase("(N/A)")) ? null : value;
+			metrics.counters++;
+
+			if (traced) {
+				trace.log(" data element: " + names[i] + " = " + values[i] + " added to measurement file");
+			}
+			i++;
+		}
+		batchNames[batched] = names;
+		batchValues[batched] = values;
+		batched++;
+		if (batched == batchNames.length) {
+			flush();
+		}
+	}
+
+	/**
+	 * Saves the rows collected into the batch. Does nothing if the rows are not batched.
+	 * 
+	 * @throws Exception
+	 */
+	void flush() throws Exception {
+		if (batched == 0) {
+			return;
+		}
+		if (!constantDataSet) {
+			batchFile.setConstantData(header.names(), header.values());
+			constantDataSet = true;
+		}
+		batchFile.saveRows(batchNames, batchValues, batched);
+		metrics.rows += batched;
+		for (int i = 0; i < batched; i++) {
+			batchNames[i] = null;
+			batchValues[i] = null;
+		}
+		batched = 0;
+	}
+}
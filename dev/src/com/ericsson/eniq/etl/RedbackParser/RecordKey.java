@@ -0,0 +1,73 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.Arrays;
+
+/**
+ * Key of one record (one row in the measurement table): the values of the group keys of the policy, excluding
+ * epochtime, in group key order.<br>
+ * <br>
+ * The values are compared directly and the hash code is computed once, so no String is concatenated to find or
+ * compare records. Missing (nullable) group keys have a null value.
+ *
+ */
+final class RecordKey implements Comparable<RecordKey> {
+
+	private final String[] values;
+	private final int hash;
+
+	/**
+	 * @param values
+	 *            group key values by group key slot. The array is not copied.
+	 */
+	RecordKey(final String[] values) {
+		this.values = values;
+		this.hash = Arrays.hashCode(values);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof RecordKey)) {
+			return false;
+		}
+		final RecordKey other = (RecordKey) obj;
+		return hash == other.hash && Arrays.equals(values, other.values);
+	}
+
+	/**
+	 * Orders keys value by value, missing values first.
+	 */
+	@Override
+	public int compareTo(final RecordKey other) {
+		final int length = Math.min(values.length, other.values.length);
+		for (int i = 0; i < length; i++) {
+			final String a = values[i];
+			final String b = other.values[i];
+			if (a != b) {
+				if (a == null) {
+					return -1;
+				}
+				if (b == null) {
+					return 1;
+				}
+				final int result = a.compareTo(b);
+				if (result != 0) {
+					return result;
+				}
+			}
+		}
+		return values.length - other.values.length;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(values);
+	}
+}
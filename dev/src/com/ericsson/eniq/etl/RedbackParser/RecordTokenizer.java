@@ -0,0 +1,247 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tokenizes a Redback data line (key 1:value 1;...;key n:value n) into key value pairs in one pass over the line.<br>
+ * <br>
+ * Fields and items are found by walking the chars of the line, so the line can be any CharSequence, also a view over
+ * the bytes of a mapped file. Strings are only created for the keys and values that are returned.<br>
+ * <br>
+ * The rules are the same as in the String based parsing in RedbackParser.parseRecords:
+ * <ul>
+ * <li>for epochtime (and class counter) fields the key and value are the last two items of the field. The epochtime
+ * value is parsed into seconds once here, see EpochtimePair.</li>
+ * <li>for other fields the key is the text before the first field delimiter and the value the text after it</li>
+ * <li>a value that has two whitespace separated parts is split, and the second part is stored as key_agg</li>
+ * <li>a field without a key is logged and skipped</li>
+ * <li>a field that can not be split into key and value stops the tokenizing of the line with an exception</li>
+ * <li>if a ClassCounterHandler is given, class counter fields are passed to it, because their counters are on the
+ * continuation lines that follow the data line</li>
+ * </ul>
+ *
+ */
+class RecordTokenizer {
+
+	private static final String EPOCHTIME = "epochtime";
+	private static final String METERING_CLASS = "metering_class_counters";
+	private static final String POLICING_CLASS = "policing_class_counters";
+	private static final String AGG_SUFFIX = "_agg";
+
+	private final char colDelim;
+	private final char fieldDelim;
+	private final Logger log;
+
+	RecordTokenizer(final char colDelim, final char fieldDelim, final Logger log) {
+		this.colDelim = colDelim;
+		this.fieldDelim = fieldDelim;
+		this.log = log;
+	}
+
+	/**
+	 * Handles the class counter fields of class counter policies (CR 145).
+	 */
+	interface ClassCounterHandler {
+
+		/**
+		 * Reads the class counters of field from the continuation lines. Called when the field is found, before the
+		 * rest of the data line is tokenized.
+		 *
+		 * @param field
+		 *            class counter field of the data line
+		 * @return the last class counter field that was handled
+		 * @throws Exception
+		 *             if the class counters can not be read. The rest of the data line is not tokenized.
+		 */
+		String classField(String field) throws Exception;
+	}
+
+	/**
+	 * Tokenizes one data line and adds the found key value pairs to list.
+	 *
+	 * @param line
+	 *            data line without row delimiter
+	 * @param list
+	 *            list where the found pairs are added
+	 * @throws Exception
+	 *             if a field can not be parsed. Pairs found before the failing field are left in list.
+	 */
+	void tokenize(final CharSequence line, final List<NameValuePair> list) throws Exception {
+		tokenize(line, list, null);
+	}
+
+	/**
+	 * Tokenizes one data line of a class counter policy and adds the found key value pairs to list.
+	 *
+	 * @param line
+	 *            data line without row delimiter. The line must not be changed by classCounters, so a reused line
+	 *            view can not be given here.
+	 * @param list
+	 *            list where the found pairs are added
+	 * @param classCounters
+	 *            handler of the class counter fields, or null if they are tokenized like other fields
+	 * @throws Exception
+	 *             if a field can not be parsed. Pairs found before the failing field are left in list.
+	 */
+	void tokenize(final CharSequence line, final List<NameValuePair> list, final ClassCounterHandler classCounters)
+			throws Exception {
+		final int length = line.length();
+		int fieldStart = 0;
+		while (fieldStart < length) {
+			int fieldEnd = indexOf(line, colDelim, fieldStart, length);
+			if (fieldEnd < 0) {
+				fieldEnd = length;
+			}
+			if (fieldEnd == fieldStart) {
+				// Empty fields at the end of line are ignored, others stop the parsing of the line.
+				if (onlyColDelims(line, fieldEnd, length)) {
+					return;
+				}
+				throw new Exception("Empty field in dataline at position " + fieldStart);
+			}
+			tokenizeField(line, fieldStart, fieldEnd, list, classCounters);
+			fieldStart = fieldEnd + 1;
+		}
+	}
+
+	private void tokenizeField(final CharSequence line, final int start, final int end, final List<NameValuePair> list,
+			final ClassCounterHandler classCounters) throws Exception {
+		final boolean epochtime = contains(line, start, end, EPOCHTIME);
+		final boolean classField = !epochtime
+				&& (contains(line, start, end, METERING_CLASS) || contains(line, start, end, POLICING_CLASS));
+
+		if (classField && classCounters != null) {
+			// The counters are on the continuation lines, nothing is added from the field itself.
+			final String handled = classCounters.classField(line.subSequence(start, end).toString());
+			if (handled.indexOf(fieldDelim) < 1) {
+				log.log(Level.WARNING, " Error while parsing data from: " + handled);
+			}
+			return;
+		}
+
+		final int firstDelim = indexOf(line, fieldDelim, start, end);
+		if (firstDelim < 0) {
+			throw new Exception("Field delimiter not found in field: " + line.subSequence(start, end));
+		}
+		if (firstDelim == start) {
+			log.log(Level.WARNING, " Error while parsing data from: " + line.subSequence(start, end));
+			return;
+		}
+
+		if (epochtime || classField) {
+			// Key and value are the last two items, empty items at the end are ignored.
+			int itemsEnd = end;
+			while (itemsEnd > start && line.charAt(itemsEnd - 1) == fieldDelim) {
+				itemsEnd--;
+			}
+			final int valueDelim = lastIndexOf(line, fieldDelim, start, itemsEnd);
+			if (valueDelim < start) {
+				throw new Exception("Value not found in field: " + line.subSequence(start, end));
+			}
+			final int keyDelim = lastIndexOf(line, fieldDelim, start, valueDelim);
+			final String key = trimmed(line, keyDelim + 1, valueDelim);
+			final String value = trimmed(line, valueDelim + 1, itemsEnd);
+			list.add(epochtime ? new EpochtimePair(key, value) : new NameValuePair(key, value));
+			return;
+		}
+
+		final String key = trimmed(line, start, firstDelim);
+
+		// Trim the value and check if it consists of two whitespace separated values.
+		int valueStart = firstDelim + 1;
+		int valueEnd = end;
+		while (valueStart < valueEnd && line.charAt(valueStart) <= ' ') {
+			valueStart++;
+		}
+		while (valueEnd > valueStart && line.charAt(valueEnd - 1) <= ' ') {
+			valueEnd--;
+		}
+		final int space = indexOfWhitespace(line, valueStart, valueEnd);
+		if (space >= 0) {
+			int second = space;
+			while (second < valueEnd && isWhitespace(line.charAt(second))) {
+				second++;
+			}
+			if (indexOfWhitespace(line, second, valueEnd) < 0) {
+				list.add(new NameValuePair(key, line.subSequence(valueStart, space).toString()));
+				list.add(new NameValuePair(key + AGG_SUFFIX, line.subSequence(second, valueEnd).toString()));
+				return;
+			}
+		}
+		list.add(new NameValuePair(key, line.subSequence(valueStart, valueEnd).toString()));
+	}
+
+	private boolean onlyColDelims(final CharSequence line, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			if (line.charAt(i) != colDelim) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String trimmed(final CharSequence line, final int from, final int to) {
+		int start = from;
+		int end = to;
+		while (start < end && line.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && line.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		return line.subSequence(start, end).toString();
+	}
+
+	private static int indexOf(final CharSequence line, final char c, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			if (line.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return index of last c in [from, to) or from - 1 if not found
+	 */
+	private static int lastIndexOf(final CharSequence line, final char c, final int from, final int to) {
+		for (int i = to - 1; i >= from; i--) {
+			if (line.charAt(i) == c) {
+				return i;
+			}
+		}
+		return from - 1;
+	}
+
+	private static int indexOfWhitespace(final CharSequence line, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			if (isWhitespace(line.charAt(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Same chars as \s in regular expressions
+	 */
+	private static boolean isWhitespace(final char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+	}
+
+	private static boolean contains(final CharSequence line, final int from, final int to, final String word) {
+		final int last = to - word.length();
+		for (int i = from; i <= last; i++) {
+			int j = 0;
+			while (j < word.length() && line.charAt(i + j) == word.charAt(j)) {
+				j++;
+			}
+			if (j == word.length()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -1,16 +1,37 @@
 package com.ericsson.eniq.etl.RedbackParser;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.text.DecimalFormat;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -23,6 +44,7 @@ import com.distocraft.dc5000.etl.parser.Main;
 import com.distocraft.dc5000.etl.parser.MeasurementFile;
 import com.distocraft.dc5000.etl.parser.Parser;
 import com.distocraft.dc5000.etl.parser.SourceFile;
+import com.ericsson.eniq.etl.RedbackParser.FileMetrics.Phase;
 
 /**
  * 
@@ -56,6 +78,119 @@ import com.distocraft.dc5000.etl.parser.SourceFile;
  * 2 = vendor ID is parsed from 1st header line of sourcefile using regexp pattern defined in parameter named tag_id</td>
  * </tr>
  * <tr>
+ * <td>Table format policies</td>
+ * <td>redback.tableFormatPolicies</td>
+ * <td>Comma separated tag_ids of the policies that are in table format (default
+ * PM_policy_aspcpu,PM_policy_aspload,PM_policy_aspmem,PM_policy_ppa,PM_policy_aspepscpu)</td>
+ * </tr>
+ * <tr>
+ * <td>Table columns</td>
+ * <td>redback.tableFormat.&lt;tag_id&gt;</td>
+ * <td>Comma separated column names of the table of a table format policy. Built in columns are used for the default
+ * table format policies if not set.</td>
+ * </tr>
+ * <tr>
+ * <td>Table row format</td>
+ * <td>redback.tableFormatRegExp.&lt;tag_id&gt;</td>
+ * <td>Regexp pattern of a table row, with one group for each column of redback.tableFormat.&lt;tag_id&gt;. The built
+ * in pattern of the policy (percentages for the CPU policies) is used if not set.</td>
+ * </tr>
+ * <tr>
+ * <td>Group keys</td>
+ * <td>redback.groupKeys.&lt;tag_id&gt;</td>
+ * <td>Comma separated group keys of a policy that is not built in, the epochtime key first. The keys must not be
+ * empty or given twice. Compiled with the first sourcefile of the policy, and again when the value changes.</td>
+ * </tr>
+ * <tr>
+ * <td>Input mode</td>
+ * <td>redback.inputMode</td>
+ * <td>reader = sourcefile is read through a character reader (default)<br>
+ * mmap = sourcefile is memory mapped and tokenized directly from the bytes. The reader is used if charsetName is
+ * set or if the sourcefile can not be mapped.</td>
+ * </tr>
+ * <tr>
+ * <td>ROP length</td>
+ * <td>redback.ropLength</td>
+ * <td>Length of the ROPs of the sourcefiles in seconds, for example 60 or 300 (default 900). The records of a
+ * sourcefile are grouped by the ROP of their epochtime, and DATETIME_ID is the start of the ROP of the filename
+ * datetime stamp.</td>
+ * </tr>
+ * <tr>
+ * <td>Read buffer size</td>
+ * <td>redback.readBufferSize</td>
+ * <td>Largest block in bytes that is read from the sourcefile at once in reader input mode (default 65536). Smaller
+ * files are read with one block of the file size. The line buffer of the parser grows to the block size and is
+ * reused for the next files.</td>
+ * </tr>
+ * <tr>
+ * <td>Streaming output</td>
+ * <td>redback.streamingOutput</td>
+ * <td>false = all ROPs of the sourcefile are collected before they are written to the measurement file (default)<br>
+ * true = each ROP is written to the measurement file as soon as a ROP two ROPs after it is found in the sourcefile.
+ * Lines of the ROP just before the latest one are still added to their records, later lines of a written ROP are
+ * skipped with a warning. At most two ROPs of the file are then held in memory, the latest one and the one before it.
+ * </td>
+ * </tr>
+ * <tr>
+ * <td>Emit threads</td>
+ * <td>redback.emitThreads</td>
+ * <td>N &gt; 0 = the ROPs of a sourcefile with more than one ROP (for example a catch-up file) are written in
+ * parallel: the first ROP to the measurement file of the sourcefile, each later ROP by one of N emit threads to a
+ * measurement file of its own, created for the same sourcefile with worker name
+ * &lt;workerName&gt;_&lt;file number&gt;_rop&lt;n&gt;. Not
+ * used in streaming mode. The value is read from the first sourcefile of the worker. (default 0, all ROPs are written
+ * to the measurement file of the sourcefile by the parser thread)</td>
+ * </tr>
+ * <tr>
+ * <td>Sorted output</td>
+ * <td>redback.sortedOutput</td>
+ * <td>false = the records are collected in hash maps and written in no particular order (default)<br>
+ * true = the records are written ordered by ROP, epochtime and group key values, so the output of a sourcefile is
+ * always the same</td>
+ * </tr>
+ * <tr>
+ * <td>Emit batch size</td>
+ * <td>redback.emitBatchSize</td>
+ * <td>Number of rows given to the measurement file with one call, if it is a BatchMeasurementFile (default 256). 0 =
+ * each counter is added and each row saved separately, as for other measurement files.</td>
+ * </tr>
+ * <tr>
+ * <td>Worker pool size</td>
+ * <td>redback.workerPoolSize</td>
+ * <td>Number of threads that parse the sourcefiles of one parser worker in parallel (default 1, files are parsed
+ * one at a time by the worker thread). The value is read from the first sourcefile of the worker. The callbacks of
+ * Main for different files are then made from several threads, one call at a time. A failing callback stops the
+ * worker as with one thread.</td>
+ * </tr>
+ * <tr>
+ * <td>Metrics exporters</td>
+ * <td>redback.metricsExporters</td>
+ * <td>Comma separated class names of MetricsExporters that get the parse metrics of every sourcefile, for example
+ * com.ericsson.eniq.etl.RedbackParser.LogMetricsExporter (default none). The value is read from the first sourcefile
+ * of the worker. The metrics are also summed by policy and shown in JMX as
+ * com.ericsson.eniq.etl.RedbackParser:type=ParseMetrics,policy=&lt;tag_id&gt;.</td>
+ * </tr>
+ * <tr>
+ * <td>Log sample interval</td>
+ * <td>redback.logSampleInterval</td>
+ * <td>N &gt; 0 = about one data line or record in N is logged at INFO level with its fields and counters, as they
+ * are logged for every line at FINEST level (default 0, no sampling)</td>
+ * </tr>
+ * <tr>
+ * <td>Chunk size</td>
+ * <td>redback.chunkSize</td>
+ * <td>N &gt; 0 = the data lines of a (not table format) sourcefile larger than N bytes are split into chunks of about
+ * N bytes that are parsed in parallel by the chunk threads. The rows are merged into ROPs in file order, so the output
+ * is the same as without chunks. Line numbers in the log are counted from the start of the chunk. Files whose 1st
+ * line is not a header are parsed line by line. (default 0, files are parsed line by line)</td>
+ * </tr>
+ * <tr>
+ * <td>Chunk threads</td>
+ * <td>redback.chunkThreads</td>
+ * <td>Number of threads that parse the chunks of large sourcefiles (default number of processors). The value is read
+ * from the first sourcefile of the worker.</td>
+ * </tr>
+ * <tr>
  * <td>File Name</td>
  * <td>filename</td>
  * <td>contains the filename of the inputdatafile.</td>
@@ -77,7 +212,8 @@ import com.distocraft.dc5000.etl.parser.SourceFile;
  * <tr>
  * <td>DateTime</td>
  * <td>DATETIME_ID</td>
- * <td>contains the measurement datetime (yyyyMMddHHmmss)</td>
+ * <td>contains the measurement datetime (yyyyMMddHHmmss): the datetime stamp of the filename, rounded down to the
+ * start of its ROP (see redback.ropLength) and shifted by the UTC offset of the filename (interface property utc_pattern)</td>
  * </tr>
  * </table>
  * 
@@ -88,57 +224,82 @@ import com.distocraft.dc5000.etl.parser.SourceFile;
 public class RedbackParser extends DefaultHandler implements Parser {
 
 	private static final String JVM_TIMEZONE = new SimpleDateFormat("Z").format(new Date());
-	private String block = "";
-	private final int bufferSize = 10000;
-	private String filename;
+	// Initial size of the line buffer of a new parse context, it grows to the read buffer size of the files
+	private final int bufferSize = 1024;
+	// Read buffer size of files whose size is not known
+	private static final int DEFAULT_READ_BUFFER_SIZE = 8192;
+	// Parse contexts of the files, reused for the next files when parsing of a file is done
+	private final ConcurrentLinkedQueue<ParseContext> contexts = new ConcurrentLinkedQueue<ParseContext>();
 	private Logger log;
 	private Main mainParserObject = null;
+	// Source of the files and receiver of the callbacks, Main in ENIQ
+	private ParserHost host = null;
+	// Get the metrics of every parsed file, set in run
+	private MetricsExporter[] exporters = new MetricsExporter[0];
+	// Parse the chunks of large files, created for the first chunked file and shut down at the end of run
+	private ExecutorService chunkPool = null;
+	private int chunkThreads = Runtime.getRuntime().availableProcessors();
+	// Write the ROPs of files with several ROPs, created for the first such file and shut down at the end of run
+	private ExecutorService emitPool = null;
+	private int emitThreads = 0;
+	// Number of files whose ROPs have been written in parallel, names the measurement file sessions of the ROPs
+	private final AtomicLong emittedFiles = new AtomicLong();
 	private String setName;
 	private String setType;
 	private int status = 0;
 	private String techPack;
 	private String workerName = "";
 	//private static final String UTC_PATTERN = ".*UTC(.+?)\\..*";
+	private static final String FILENAME_DATETIME_PATTERN = "(\\d{8})\\.(\\d{6})";
 
 
-	/*CR-145 The group keys of data being parsed.Class group are introduced which will be combined with policy keys
-	if class exist*/
-	private String[] groupKeys ;
-	private String[] tempGroupKeys = {};
-	private String[] nullableKeys = {};
-	private String policyName = null;
 	private final String meteringClass = "metering_class_counters";
 	private final String policingClass = "policing_class_counters";
 
 	// The group keys of the different policies:
-	private final String[] GLOBAL_POLICY_KEYS = { "epochtime" };
-	private final String[] PORT_POLICY_KEYS = { "epochtime", "slot", "port" };
-	private final String[] CHANNEL_POLICY_KEYS = { "epochtime", "slot", "port", "channel" };
-	private final String[] DOT1Q_POLICY_KEYS = { "epochtime", "slot", "port", "vlan_id", "policing_policy_name" };
-	private final String[] DOT1Q_POLICY_KEYS_NULLABLE = { "policing_policy_name" };
-	private final String[] CLASS_POLICY_KEYS = { "metering_class_counters", "policing_class_counters" };
-	private final String[] ATM_POLICY_KEYS = { "epochtime", "slot", "port", "vpi", "vci" };
-	private final String[] FRAMERELAY_POLICY_KEYS = { "epochtime", "slot", "port", "channel" };
-	private final String[] SUBSCRIBER_POLICY_KEYS = { "epochtime", "user_name" };
-	private final String[] CONTEXT_POLICY_KEYS = { "epochtime", "context_name" };
-	private final String[] LINKGROUP_POLICY_KEYS = { "epochtime", "description" };
-	private final String[] EPS_APN_POLICY_KEYS = { "epochtime", "SgiApnIndex" };
-	private final String[] EPS_CONTROL_POLICY_KEYS = { "epochtime" };
-	private final String[] EPS_TRAFFIC_POLICY_KEYS = { "epochtime" };
-	private final String[] ASP_CPU_POLICY_KEYS = { "Epochtime", "slot", "asp" };
-	private final String[] ASP_LOAD_POLICY_KEYS = { "Epochtime", "slot", "asp" };
-	private final String[] ASP_MEM_POLICY_KEYS = { "Epochtime", "slot", "asp" };
-	private final String[] PPA_CPU_POLICY_KEYS = { "Epochtime", "slot", "ppa" };
-	private final String[] ASP_EPS_CPU_POLICY_KEYS = { "Epochtime", "slot", "asp" };
+	private static final String[] GLOBAL_POLICY_KEYS = { "epochtime" };
+	private static final String[] PORT_POLICY_KEYS = { "epochtime", "slot", "port" };
+	private static final String[] CHANNEL_POLICY_KEYS = { "epochtime", "slot", "port", "channel" };
+	private static final String[] DOT1Q_POLICY_KEYS = { "epochtime", "slot", "port", "vlan_id", "policing_policy_name" };
+	private static final String[] DOT1Q_POLICY_KEYS_NULLABLE = { "policing_policy_name" };
+	private static final String[] CLASS_POLICY_KEYS = { "metering_class_counters", "policing_class_counters" };
+	private static final String[] ATM_POLICY_KEYS = { "epochtime", "slot", "port", "vpi", "vci" };
+	private static final String[] FRAMERELAY_POLICY_KEYS = { "epochtime", "slot", "port", "channel" };
+	private static final String[] SUBSCRIBER_POLICY_KEYS = { "epochtime", "user_name" };
+	private static final String[] CONTEXT_POLICY_KEYS = { "epochtime", "context_name" };
+	private static final String[] LINKGROUP_POLICY_KEYS = { "epochtime", "description" };
+	private static final String[] EPS_APN_POLICY_KEYS = { "epochtime", "SgiApnIndex" };
+	private static final String[] EPS_CONTROL_POLICY_KEYS = { "epochtime" };
+	private static final String[] EPS_TRAFFIC_POLICY_KEYS = { "epochtime" };
+	private static final String[] ASP_CPU_POLICY_KEYS = { "Epochtime", "slot", "asp" };
+	private static final String[] ASP_LOAD_POLICY_KEYS = { "Epochtime", "slot", "asp" };
+	private static final String[] ASP_MEM_POLICY_KEYS = { "Epochtime", "slot", "asp" };
+	private static final String[] PPA_CPU_POLICY_KEYS = { "Epochtime", "slot", "ppa" };
+	private static final String[] ASP_EPS_CPU_POLICY_KEYS = { "Epochtime", "slot", "asp" };
+
+	// Policy names (after PM_policy_) and their group keys, in the order they are matched against tag_id
+	private static final Map<String, String[]> POLICY_GROUP_KEYS = new LinkedHashMap<String, String[]>();
+	static {
+		POLICY_GROUP_KEYS.put("global", GLOBAL_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("port", PORT_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("channel", CHANNEL_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("dot1q", DOT1Q_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("atm", ATM_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("fr", FRAMERELAY_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("sub", SUBSCRIBER_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("context", CONTEXT_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("linkgroup", LINKGROUP_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("link", LINKGROUP_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("eps_apn", EPS_APN_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("eps_ctrl", EPS_CONTROL_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("eps_traf", EPS_TRAFFIC_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("aspcpu", ASP_CPU_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("aspload", ASP_LOAD_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("aspmem", ASP_MEM_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("ppa", PPA_CPU_POLICY_KEYS);
+		POLICY_GROUP_KEYS.put("aspepscpu", ASP_EPS_CPU_POLICY_KEYS);
+	}
 	
-	// This stores the PM data for one Redback PM file
-	private Map<String, ArrayList<NameValuePair>> m_dataStoreMap = null;
-	// edeamai: this stores the PM data of 1 ROP
-	private Map<String, ArrayList<NameValuePair>> rop_dataStoreMap = null;
-
-	private ArrayList<String> tableFormatPolicyList = null;
-	private ArrayList<String> tableColList;
-
 	private long parseStartTime;
 	private long fileSize = 0L;
 	private long totalParseTime = 0L;
@@ -150,38 +311,9 @@ public class RedbackParser extends DefaultHandler implements Parser {
 	 * @param list
 	 * @return
 	 */
-	private boolean checkGroupKeys(final ArrayList<NameValuePair> list) {
-		if (list.size() < groupKeys.length - nullableKeys.length) {
-			return false;
-		}
-		boolean match;
-		boolean keyIsNullable;
-		
-			for (final String groupKey2 : groupKeys) {
-				match = false;
-				keyIsNullable = false;
-				for(String nullableKey : nullableKeys) {
-					if(nullableKey.equalsIgnoreCase(groupKey2)) {
-						keyIsNullable = true;
-						match = true;
-						break;
-					}
-				}
-				if(keyIsNullable) {
-					continue;
-				}
-				for(final NameValuePair a : list){
-					if(groupKey2.equalsIgnoreCase(a.m_name)){
-						match = true;
-						break;
-						}
-					}
-				if(!match){
-					return false;
-					}
-				}
-			return true;
-			}
+	private boolean checkGroupKeys(final ParseContext ctx, final ArrayList<NameValuePair> list) {
+		return ctx.groupKeySchema.hasGroupKeys(list);
+	}
 
 	/**
 	 * Initialize parser
@@ -191,6 +323,16 @@ public class RedbackParser extends DefaultHandler implements Parser {
 			final String workerName) {
 
 		this.mainParserObject = main;
+		initHost(new MainParserHost(main), techPack, setType, setName, workerName);
+	}
+
+	/**
+	 * Initialize parser with another host than Main, for example the load test harness
+	 */
+	void initHost(final ParserHost host, final String techPack, final String setType, final String setName,
+			final String workerName) {
+
+		this.host = host;
 		this.techPack = techPack;
 		this.setType = setType;
 		this.setName = setName;
@@ -211,11 +353,43 @@ public class RedbackParser extends DefaultHandler implements Parser {
 	@Override
 	public void parse(final SourceFile sf, final String techPack, final String setType, final String setName)
 			throws Exception {
+		parseFile(new MainParserHost.SourceFileInput(sf), techPack, setType, setName);
+	}
 
-		this.filename = sf.getName();
+	/**
+	 * Parses one source file with a pooled ParseContext. The context is given back to the pool and the metrics of the
+	 * file are recorded however the parsing ends, also for files rejected before parsing (unsupported or invalid
+	 * policy).
+	 * 
+	 * @throws Exception
+	 *             if the measurement file can not be created or the policy of the file is not valid
+	 */
+	private void parseFile(final InputFile sf, final String techPack, final String setType, final String setName)
+			throws Exception {
+		final long fileSize = sf.fileSize();
+		final ParseContext ctx = acquireContext();
+		// The context gets new metrics when it is reset
+		final FileMetrics metrics = ctx.metrics;
+		try {
+			ctx.filename = sf.getName();
+			metrics.start(ctx.filename, fileSize);
+			parseFile(ctx, sf, techPack, setType, setName);
+		} catch (final Exception e) {
+			metrics.failed = true;
+			throw e;
+		} finally {
+			recordMetrics(metrics);
+			releaseContext(ctx);
+		}
+	}
+
+	private void parseFile(final ParseContext ctx, final InputFile sf, final String techPack, final String setType,
+			final String setName) throws Exception {
 		MeasurementFile mFile = null;
-		block = "";
-		BufferedReader br = null;
+		// tag_id the measurement file was created with, tag_id_mode 2 may change tag_id later
+		String mFileTagId = null;
+		Closeable input = null;
+		LineSource source = null;
 		final int rowDelimLength = 1;
 		final String colDelim = ";";
 		final String rowDelim = "\n";
@@ -233,68 +407,93 @@ public class RedbackParser extends DefaultHandler implements Parser {
 
 		try {
 			if (tag_id_mode == 1) {
-				vendorPattern = Pattern.compile(tag_id);
-				final Matcher m = vendorPattern.matcher(filename);
+				vendorPattern = PatternCache.pattern(tag_id);
+				final Matcher m = vendorPattern.matcher(ctx.filename);
 				if (m.find()) {
 					tag_id = m.group(1);
 				}
 			}
 		} catch (final Exception e) {
-			log.log(Level.WARNING, "Error while matching pattern " + tag_id + " from filename " + filename
+			log.log(Level.WARNING, "Error while matching pattern " + tag_id + " from filename " + ctx.filename
 					+ " for vendorId", e);
 		}
-
-		try {
-			mFile = Main.createMeasurementFile(sf, tag_id, techPack, setType, setName, this.workerName, log);
-			if (!mFile.isOpen()) {
-				String exitLog = "There was a problem preparing measurement file object - possibly due to invalid or unsupported policy name ("
-						+ tag_id
-						+ "). "
-						+ "\nRegular expression used to extract policy name: "
-						+ vendorPattern.toString();
-				log.info(exitLog);
-				log.info("Nothing to Parse as the MO is not supported by the TP. Hence exiting...");
-				return;
-			}
-		} catch (final Exception e) {
-			throw e;
+		ctx.metrics.policy = tag_id;
+
+		mFile = host.createMeasurementFile(sf, tag_id, techPack, setType, setName, this.workerName, log);
+		mFileTagId = tag_id;
+		if (!mFile.isOpen()) {
+			String exitLog = "There was a problem preparing measurement file object - possibly due to invalid or unsupported policy name ("
+					+ tag_id
+					+ "). "
+					+ "\nRegular expression used to extract policy name: "
+					+ vendorPattern;
+			log.info(exitLog);
+			log.info("Nothing to Parse as the MO is not supported by the TP. Hence exiting...");
+			// The file is rejected, it is counted as failed in the metrics of its policy
+			ctx.metrics.failed = true;
+			return;
 		}
 
-		setGroupKeys(tag_id);
+		ctx.groupKeysProperty = sf.getProperty("redback.groupKeys." + tag_id, null);
+		setGroupKeys(ctx, tag_id);
 
 		try {
 
 			// Construct input reader for ascii file type
 			final String charsetName = StaticProperties.getProperty("charsetName", null);
-
-			InputStreamReader isr = null;
-			if (charsetName == null) {
-				isr = new InputStreamReader(sf.getFileInputStream());
+			final String inputMode = sf.getProperty("redback.inputMode", "reader");
+
+			final InputStream is = sf.getFileInputStream();
+			input = is;
+			if (charsetName == null && "mmap".equalsIgnoreCase(inputMode) && is instanceof FileInputStream
+					&& ((FileInputStream) is).getChannel().size() <= Integer.MAX_VALUE) {
+				// Tokenize the bytes of the file directly, no reader in between
+				final FileChannel channel = ((FileInputStream) is).getChannel();
+				ctx.mappedLineScanner.reset(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+						Charset.defaultCharset());
+				source = ctx.mappedLineScanner;
+				log.log(Level.FINEST, "Input mode: mmap");
 			} else {
-				log.log(Level.FINEST, "InputStreamReader charsetName: " + charsetName);
-				isr = new InputStreamReader(sf.getFileInputStream(), charsetName);
+				if ("mmap".equalsIgnoreCase(inputMode)) {
+					log.fine("Input mode mmap not available for " + sf.getName() + ", using reader");
+				}
+				// The file is read in blocks of the read buffer size, the line scanner does the char buffering
+				final int readBufferSize = readBufferSize(sf.fileSize(),
+						Integer.parseInt(sf.getProperty("redback.readBufferSize", "65536")));
+				final InputStream bis = new BufferedInputStream(is, readBufferSize);
+				InputStreamReader isr = null;
+				if (charsetName == null) {
+					isr = new InputStreamReader(bis);
+				} else {
+					log.log(Level.FINEST, "InputStreamReader charsetName: " + charsetName);
+					isr = new InputStreamReader(bis, charsetName);
+				}
+				log.log(Level.FINEST, "InputStreamReader Encoding: " + isr.getEncoding() + ", read buffer size: "
+						+ readBufferSize);
+				input = isr;
+				ctx.lineScanner.reset(isr, readBufferSize);
+				source = ctx.lineScanner;
 			}
-			log.log(Level.FINEST, "InputStreamReader Encoding: " + isr.getEncoding());
-			br = new BufferedReader(isr);
 
 			// Start parsing the input file
 			log.fine("Parsing File: " + sf.getName());
 
 			// Read header and check policy
-			final String firstLine = readLine(rowDelim, br, rowDelimLength);
+			final String firstLine = readLine(rowDelim, source, rowDelimLength);
 			if (firstLine == null) {
-				log.log(Level.WARNING, " Error reading header line from: " + this.filename);
+				log.log(Level.WARNING, " Error reading header line from: " + ctx.filename);
 			} else if (firstLine.indexOf(tag_id) == -1) {
-				log.log(Level.WARNING, "Header (1st line of source file " + this.filename
+				log.log(Level.WARNING, "Header (1st line of source file " + ctx.filename
 						+ ") does not contain expected policy name.");
 			}
 
 			try {
 				if (tag_id_mode == 2) {
-					vendorPattern = Pattern.compile(tag_id);
+					vendorPattern = PatternCache.pattern(tag_id);
 					final Matcher m = vendorPattern.matcher(firstLine);
 					if (m.find()) {
 						tag_id = m.group(1);
+						ctx.metrics.policy = tag_id;
 					}
 				}
 			} catch (final Exception e) {
@@ -302,9 +501,9 @@ public class RedbackParser extends DefaultHandler implements Parser {
 						+ " for vendorID", e);
 			}
 
-			if (null == tableFormatPolicyList) {
+			if (null == ctx.tableFormatPolicyList) {
 				// Get list of measurement types that are in table format
-				tableFormatPolicyList = new ArrayList<String>();
+				ctx.tableFormatPolicyList = new ArrayList<String>();
 				String tableFormatPolicies = sf.getProperty("redback.tableFormatPolicies", null);
 				// String tableFormatPolicies = null;
 				if (null == tableFormatPolicies) {
@@ -315,114 +514,67 @@ public class RedbackParser extends DefaultHandler implements Parser {
 				final String[] tableFormatPoliciesSplit = tableFormatPolicies.split(",");
 
 				for (final String element : tableFormatPoliciesSplit) {
-					tableFormatPolicyList.add(element);
+					ctx.tableFormatPolicyList.add(element);
 				}
 			}
 
-			// log.log(Level.FINEST, "Table Format Policy List is : " + tableFormatPolicyList.toString());
-			if (tableFormatPolicyList.contains(tag_id)) {
+			// DATETIME_ID is taken from the filename, so it is the same for every row of the file
+			ctx.ropClock = RopClock.of(Integer.parseInt(sf.getProperty("redback.ropLength",
+					String.valueOf(RopClock.DEFAULT_ROP_LENGTH))));
+			final String datetimeoutput = getDatetimeId(ctx.ropClock, ctx.filename, UTC_PATTERN);
+			ctx.trace = new HotPathLog(log, Integer.parseInt(sf.getProperty("redback.logSampleInterval", "0")));
+			// The file level columns are the same for every row
+			final FileHeader header = (datetimeoutput == null) ? null : new FileHeader(datetimeoutput, sf.getName(),
+					sf.getDir(), JVM_TIMEZONE, tag_id);
+			final int emitBatchSize = Integer.parseInt(sf.getProperty("redback.emitBatchSize", "256"));
+			ctx.emitter = new RecordEmitter(mFile, header, ctx.metrics, ctx.trace, emitBatchSize);
+			ctx.streamingOutput = "true".equalsIgnoreCase(sf.getProperty("redback.streamingOutput", "false"));
+			ctx.sortedOutput = "true".equalsIgnoreCase(sf.getProperty("redback.sortedOutput", "false"));
+			if (ctx.groupKeySchema != null) {
+				ctx.presizeRopStore(ctx.groupKeySchema.getRopSize());
+			}
+			final int chunkSize = Integer.parseInt(sf.getProperty("redback.chunkSize", "0"));
+			if (chunkSize > 0 && sf.fileSize() > chunkSize) {
+				ctx.chunkSize = chunkSize;
+			}
+
+			// log.log(Level.FINEST, "Table Format Policy List is : " + ctx.tableFormatPolicyList.toString());
+			if (ctx.tableFormatPolicyList.contains(tag_id)) {
 				// The file is expected to be in table format
-				parseTable(br, rowDelimLength, colDelim, rowDelim, fieldDelim, firstLine, tag_id, sf);
+				parseTable(ctx, source, rowDelimLength, colDelim, rowDelim, fieldDelim, firstLine, tag_id,
+						sf.getProperty("redback.tableFormat." + tag_id, null),
+						sf.getProperty("redback.tableFormatRegExp." + tag_id, null));
 			} else {
 				/* It is not a source file with table format - normal redback format expected
 				Modified to include tag_id so that class counters can be handled*/
-				parseRecords(br, rowDelimLength, colDelim, rowDelim, fieldDelim, firstLine,tag_id);
+				parseRecords(ctx, source, rowDelimLength, colDelim, rowDelim, fieldDelim, firstLine,tag_id);
 			}
 
-			Date epochdatetime = null;
-
+			ctx.metrics.enter(Phase.EMIT);
 			if (mFile.isOpen()) {
-				final Iterator<ArrayList<NameValuePair>> iterator = m_dataStoreMap.values().iterator();
-				String key_new = "";
-				String value_new = "";
-
-				while (iterator.hasNext()) {
-
-					final ArrayList<NameValuePair> row = iterator.next();
-					final Iterator<NameValuePair> counters = row.iterator();
-					while (counters.hasNext()) {
-						final NameValuePair nvp = counters.next();
-						key_new = nvp.m_name;
-						value_new = nvp.m_value;
-
-						
-						if (value_new != null) {
-							if (value_new.equalsIgnoreCase("(N/A)")) {
-								value_new = null;
-							}
-						}
-						
-						mFile.addData(key_new, value_new);
-
-						log.log(Level.FINEST, " data element: " + key_new + " = " + value_new
-								+ " added to measurement file");
+				if (emitThreads > 0 && header != null && ctx.m_dataStoreMap.size() > 1) {
+					emitRops(ctx, sf, mFileTagId, techPack, setType, setName, header, emitBatchSize);
+				} else {
+					final Iterator<RopRecord> iterator = records(ctx.m_dataStoreMap, ctx.sortedOutput);
+					while (iterator.hasNext()) {
+						ctx.emitter.emit(iterator.next());
 					}
-					//For Jira EQEV-53502
-					if(filename.contains(".")||filename.contains("-")||filename.contains("+"))
-					{
-						SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd.HHmmss");
-						String pattern = "(\\d{8})\\.(\\d{6})";
-						Pattern r = Pattern.compile(pattern);
-						Matcher m = r.matcher(filename);
-						while (m.find()) {
-						    String datetime= m.group(0);
-						    Date date = df.parse(datetime);
-						    long epoch = date.getTime()/1000;
-						    String datetime_1 = Long.toString(epoch);
-							//epochdatetime = new Date(timeAdjust(datetime_1)*1000);
-					final GregorianCalendar calTime = new GregorianCalendar();
-					calTime.setTimeInMillis(timeAdjust(datetime_1)*1000);
-						boolean  isAddition = false;
-						String utctz = getMatch(filename, UTC_PATTERN);
-						if (utctz!=null)
-						{
-							isAddition = (utctz.contains("+")) ? false : true;
-							int hour = Integer.parseInt(utctz.substring(1,3));
-							int min = Integer.parseInt(utctz.substring(3,utctz.length()));
-							if(!isAddition) {
-								calTime.add(Calendar.HOUR,-hour);
-								calTime.add(Calendar.MINUTE,-min);
-							} else {
-								calTime.add(Calendar.HOUR,+hour);
-								calTime.add(Calendar.MINUTE,+min);
-							}
-						}			
-					final DecimalFormat f4 = new DecimalFormat("0000");
-					final DecimalFormat f2 = new DecimalFormat("00");
-					final String datetimeoutput = f4.format(calTime.get(Calendar.YEAR))
-							+ f2.format(calTime.get(Calendar.MONTH) + 1)
-							+ f2.format(calTime.get(Calendar.DAY_OF_MONTH))
-									+ f2.format(calTime.get(Calendar.HOUR_OF_DAY)) + f2.format(calTime.get(Calendar.MINUTE))
-							+ f2.format(calTime.get(Calendar.SECOND));
-
-					mFile.addData("DATETIME_ID", datetimeoutput);
-					mFile.addData("filename", sf.getName());
-					mFile.addData("DC_SUSPECTFLAG", "");
-					mFile.addData("DIRNAME", sf.getDir());
-					mFile.addData("JVM_TIMEZONE", JVM_TIMEZONE);
-					mFile.addData("vendorID", tag_id);
-					mFile.saveData();
-						}
-						}
-						else
-						{
-							log.warning("File does not match with the pattern "+UTC_PATTERN+".Not able to extract timezone");
-						}
 				}
+				ctx.emitter.flush();
 
-				// write file and clear data..
-				m_dataStoreMap = null;
+				// write file
 				mFile.close();
 			}
 
 		} catch (final Exception e) {
 
+			ctx.metrics.failed = true;
 			log.log(Level.WARNING, "General Failure", e);
 
 		} finally {
-			if (br != null) {
+			if (input != null) {
 				try {
-					br.close();
+					input.close();
 				} catch (final Exception e) {
 					log.log(Level.WARNING, "Error closing Reader", e);
 				}
@@ -437,8 +589,111 @@ public class RedbackParser extends DefaultHandler implements Parser {
 			}
 		}
 	}
+
+	/**
+	 * Stops the clock of the parsed file and gives its metrics to the registry and the exporters.
+	 */
+	private void recordMetrics(final FileMetrics metrics) {
+		metrics.finish();
+		MetricsRegistry.record(metrics, log);
+		for (final MetricsExporter exporter : exporters) {
+			try {
+				exporter.export(metrics);
+			} catch (final Exception e) {
+				log.log(Level.WARNING, "Metrics exporter " + exporter.getClass().getName() + " failed", e);
+			}
+		}
+	}
+
+	/**
+	 * @param classNames
+	 *            value of interface property redback.metricsExporters
+	 * @return exporters of the named classes, classes that can not be created are logged and left out
+	 */
+	private MetricsExporter[] createExporters(final String classNames) {
+		final ArrayList<MetricsExporter> created = new ArrayList<MetricsExporter>();
+		if (classNames != null) {
+			for (final String className : classNames.split(",")) {
+				if (className.trim().length() == 0) {
+					continue;
+				}
+				try {
+					created.add((MetricsExporter) Class.forName(className.trim()).newInstance());
+				} catch (final Exception e) {
+					log.log(Level.WARNING, "Metrics exporter " + className.trim() + " not available", e);
+				}
+			}
+		}
+		return created.toArray(new MetricsExporter[created.size()]);
+	}
+
+	/**
+	 * @param fileSize
+	 *            size of the source file in bytes, 0 if it is not known
+	 * @param maxSize
+	 *            value of interface property redback.readBufferSize
+	 * @return size of the read buffer for the file: big enough for the whole file, but not more than maxSize
+	 */
+	static int readBufferSize(final long fileSize, final int maxSize) {
+		if (fileSize <= 0) {
+			return Math.min(DEFAULT_READ_BUFFER_SIZE, maxSize);
+		}
+		// One char more, so the end of the file is found with the same read
+		return (int) Math.max(1, Math.min(fileSize + 1, maxSize));
+	}
+
+	/**
+	 * @return parse context for a new file, a released context is reused if there is one
+	 */
+	private ParseContext acquireContext() {
+		final ParseContext ctx = contexts.poll();
+		return (ctx != null) ? ctx : new ParseContext(bufferSize);
+	}
+
+	/**
+	 * Resets ctx and gives it back to the pool for the next file.
+	 */
+	private void releaseContext(final ParseContext ctx) {
+		ctx.reset();
+		contexts.offer(ctx);
+	}
+	/**
+	 * For Jira EQEV-53502. DATETIME_ID is the yyyyMMdd.HHmmss stamp in the filename, rounded down to the start of its
+	 * ROP and shifted by the UTC offset that is found from the filename with utcPattern.
+	 * 
+	 * @param clock
+	 *            ROP length and timezone of the stamp
+	 * @param filename
+	 *            name of the source file
+	 * @param utcPattern
+	 *            regexp pattern of the UTC offset (group 1) in filename
+	 * @return DATETIME_ID (yyyyMMddHHmmss) or null if the filename does not contain a datetime stamp
+	 * @throws Exception
+	 */
+	private String getDatetimeId(final RopClock clock, final String filename, final String utcPattern)
+			throws Exception {
+		if (!(filename.contains(".") || filename.contains("-") || filename.contains("+"))) {
+			log.warning("File does not match with the pattern " + utcPattern + ".Not able to extract timezone");
+			return null;
+		}
+		final Matcher m = PatternCache.pattern(FILENAME_DATETIME_PATTERN).matcher(filename);
+		if (!m.find()) {
+			return null;
+		}
+		long datetime = clock.align(clock.parseStamp(filename, m.start()));
+		final String utctz = getMatch(filename, utcPattern);
+		if (utctz != null) {
+			final boolean isAddition = (utctz.contains("+")) ? false : true;
+			final int hour = Integer.parseInt(utctz.substring(1, 3));
+			final int min = Integer.parseInt(utctz.substring(3, utctz.length()));
+			final long offset = hour * 3600L + min * 60L;
+			datetime = isAddition ? datetime + offset : datetime - offset;
+		}
+		return clock.datetimeId(datetime);
+	}
+
 	private String getMatch(String filename, String pattern) {
-		Pattern p = Pattern.compile(pattern);
+		Pattern p = PatternCache.pattern(pattern);
 		Matcher m = p.matcher(filename);
 		if(m.matches()) {
 			return m.group(1);
@@ -446,40 +701,23 @@ public class RedbackParser extends DefaultHandler implements Parser {
 
 		return null;
 	}
-	private void parseTable(final BufferedReader br, final int rowDelimLength, final String colDelim,
+	/**
+	 * @param tableFormat
+	 *            value of interface property redback.tableFormat.&lt;tag_id&gt; (column names of the table in source
+	 *            file) or null if it is not set
+	 * @param tableFormatRegExp
+	 *            value of interface property redback.tableFormatRegExp.&lt;tag_id&gt; (pattern of the table rows) or
+	 *            null if it is not set
+	 */
+	private void parseTable(final ParseContext ctx, final LineSource source, final int rowDelimLength, final String colDelim,
 			final String rowDelim, final String fieldDelim, final String firstLine, final String tag_id,
-			final SourceFile sf) throws Exception {
+			final String tableFormat, final String tableFormatRegExp) throws Exception {
 
 		log.log(Level.FINEST, "Parse Table type ");
 
-		// Get list of column names of the table in source file
-		String tableCols = sf.getProperty("redback.tableFormat." + tag_id, null);
-		if (null == tableCols) {
-			log.warning("Interface property redback.tableFormat." + tag_id + " not found while parsing file "
-					+ sf.getName() + "" + "\n - can't get column names of table in file");
-			// Default list to be used! This is not ideal - should be provided by interface property!
-			if (tag_id.equalsIgnoreCase("PM_policy_aspcpu")) {
-				tableCols = "Slot,Asp,CpuUsageFiveSecondAvg,CpuUsageOneMinuteAvg,CpuUsageFiveMinuteAvg";
-			} else if (tag_id.equalsIgnoreCase("PM_policy_aspload")) {
-				tableCols = "Slot,Asp,LoadAvgOneMinute,LoadAvgFiveMinute,LoadAvgFifteenMinute";
-			} else if (tag_id.equalsIgnoreCase("PM_policy_aspmem")) {
-				tableCols = "Slot,Asp,TotalMemoryKBytes,FreeMemoryKBytes";
-			} else if (tag_id.equalsIgnoreCase("PM_policy_ppa")) {
-				tableCols = "Slot,PPA,CpuUsageFiveSecondAvg,CpuUsageOneMinuteAvg,CpuUsageFiveMinuteAvg";
-			} else if (tag_id.equalsIgnoreCase("PM_policy_aspepscpu")) {
-				tableCols = "Slot,Asp,CpuUsageFiveSecondAvg,CpuUsageOneMinuteAvg,CpuUsageFiveMinuteAvg";
-			} else {
-				log.severe("Table column names not available. Cannot process file.");
-				throw new Exception("Table column names not available.");
-			}
-			log.warning("Using default (hardcoded) table columns instead: " + tableCols);
-		}
-		tableColList = new ArrayList<String>();
-
-		final String[] tableColsSplit = tableCols.split(",");
-		for (final String element : tableColsSplit) {
-			tableColList.add(element);
-		}
+		// Column names and row pattern of the table, compiled for the first file of the policy
+		final TableFormat format = TableFormat.of(tag_id, tableFormat, tableFormatRegExp, ctx.filename, log);
+		ctx.tableMatcher = format.matcher(ctx.tableMatcher);
 
 		String line;
 		long lineNum = 1;
@@ -488,7 +726,7 @@ public class RedbackParser extends DefaultHandler implements Parser {
 			line = firstLine;
 			log.warning("The 1st line of redback source file is not a header.");
 		} else {
-			line = readLine(rowDelim, br, rowDelimLength);
+			line = readLine(rowDelim, source, rowDelimLength);
 			lineNum++;
 		}
 
@@ -498,75 +736,50 @@ public class RedbackParser extends DefaultHandler implements Parser {
 
 		final String value = measLine[0].split(" ")[2].trim();
 
-		final NameValuePair epochtime = new NameValuePair("Epochtime", value);
+		final NameValuePair epochtime = new EpochtimePair("Epochtime", value);
 		log.fine("Parsed epochtime " + value + "from table format for " + tag_id);
 
 		ArrayList<NameValuePair> dataLine = null;
 
-		line = readLine(rowDelim, br, rowDelimLength);
+		line = readLine(rowDelim, source, rowDelimLength);
 		lineNum++;
 
-		// String formatRegExp = sf.getProperty("redback.tableFormatRegExp", null);
-		String formatRegExp = null;
-		if (null == formatRegExp) {
-			if (tag_id.equalsIgnoreCase("PM_policy_aspload")) {
-				formatRegExp = "([0-9]+)/([0-9]+): ([0-9]+\\.[0-9]+) ([0-9]+\\.[0-9]+) ([0-9]+\\.[0-9]+)";
-				log.fine("Using default (hardcoded) setting: " + formatRegExp);
-			} else if (tag_id.equalsIgnoreCase("PM_policy_aspmem")) {
-				formatRegExp = "([0-9]+)/([0-9]+): ([0-9]+) ([0-9]+)";
-				log.fine(" Using default (hardcoded) setting: " + formatRegExp);
-			} else if (tag_id.equalsIgnoreCase("PM_policy_ppa")) {
-				formatRegExp = "([0-9]+)/((?i)[EI]PPA): ([0-9]+\\.[0-9]+)% ([0-9]+\\.[0-9]+)% ([0-9]+\\.[0-9]+)%";
-				log.fine(" Using default (hardcoded) setting: " + formatRegExp);
-			} else {
-				formatRegExp = "([0-9]+)/([0-9]+): ([0-9]+\\.[0-9]+)% ([0-9]+\\.[0-9]+)% ([0-9]+\\.[0-9]+)%";
-				log.fine(" Using default (hardcoded) setting: " + formatRegExp);
-			}
-		}
-
 		while ((null != line) && (line.length() > 0)) {
-			dataLine = new ArrayList<NameValuePair>();
+			ctx.metrics.lines++;
+			ctx.trace.nextRow();
+			dataLine = new ArrayList<NameValuePair>(format.columnCount() + 1);
 			dataLine.add(epochtime);
 
-			final Pattern pattern = Pattern.compile(formatRegExp);
-			final Matcher m = pattern.matcher(line);
+			final Matcher m = ctx.tableMatcher.reset(line);
 			if (m.find()) {
-				final int groupCount = m.groupCount();
-				if (groupCount != tableColList.size()) {
+				if (!format.columnsMatch()) {
+					ctx.metrics.skippedLines++;
 					log.warning("Line being skipped! The number of columns found in table format file does not match what is expected. Line "
 							+ lineNum + ": " + line);
 				} else {
-					for (int i = 0; i < groupCount; i++) {
-						dataLine.add(new NameValuePair(tableColList.get(i), m.group(i + 1)));
+					for (int i = 0; i < format.columnCount(); i++) {
+						dataLine.add(new NameValuePair(format.column(i), m.group(i + 1)));
+					}
+					if (ctx.trace.traced()) {
+						ctx.trace.log("Parsed line " + lineNum + ": " + HotPathLog.toString(dataLine));
 					}
-					storeRow(dataLine);
+					ctx.metrics.enter(Phase.MERGE);
+					storeRow(ctx, dataLine);
+					ctx.metrics.enter(Phase.READ);
 				}
 			} else {
+				ctx.metrics.skippedLines++;
 				log.warning("Skipping line " + lineNum + " as it did not match expected format: " + line);
 			}
-			line = readLine(rowDelim, br, rowDelimLength);
+			line = readLine(rowDelim, source, rowDelimLength);
 			lineNum++;
 		}
 
-		final Iterator<ArrayList<NameValuePair>> ropRecords = rop_dataStoreMap.values().iterator();
-		while (ropRecords.hasNext()) {
-			final ArrayList<NameValuePair> record = ropRecords.next();
-			final StringBuffer keyBuff = new StringBuffer(groupKeys.length);
-			for(String keyInGroupKeys : groupKeys){
-				for (final NameValuePair a : record) {
-					if(keyInGroupKeys.equalsIgnoreCase(a.m_name)){
-						keyBuff.append(a.m_name+a.m_value);
-					}				
-				}
-			}
-			final String key = keyBuff.toString();
-			m_dataStoreMap.put(key, record);
-		}
-		rop_dataStoreMap.clear();
+		flushRop(ctx);
 
 	}
 /*Added for CR 145 to handle class counters*/
-	private ArrayList<NameValuePair> handleClassCounters(String field,String classValue,final String fieldDelim,final String colDelim){
+	private ArrayList<NameValuePair> handleClassCounters(String field,String classValue,final String fieldDelim,final String colDelim,final HotPathLog trace){
 		final String classCounterDelim = ",";
 		final String[] result = classValue.split(classCounterDelim);
 		final ArrayList<NameValuePair> list = new ArrayList<NameValuePair>();
@@ -581,7 +794,9 @@ public class RedbackParser extends DefaultHandler implements Parser {
 					policyClass =true;
 				}
 				else{
-					log.log(Level.FINEST, meteringClass +" not present");
+					if (trace.traced()) {
+						trace.log(meteringClass + " not present");
+					}
 					list.add(new NameValuePair(meteringClass,("(N/A)")));
 					//Always add metering before policing even if it does not exist so that key sequence is maintained while using in store row method
 				}
@@ -596,7 +811,9 @@ public class RedbackParser extends DefaultHandler implements Parser {
 			}
 			list.add(new NameValuePair(key, value));
 			if(policyClass){//Add policing after metering if it does not exist to maintain group keys
-				log.log(Level.FINEST, policingClass +" not present");
+				if (trace.traced()) {
+					trace.log(policingClass + " not present");
+				}
 				list.add(new NameValuePair(policingClass,("(N/A)")));
 				policyClass = false;
 			}	
@@ -604,289 +821,441 @@ public class RedbackParser extends DefaultHandler implements Parser {
 		return list;	
 	}
 
-	private void parseRecords(final BufferedReader br, final int rowDelimLength, final String colDelim,
+	/**
+	 * Reads the class counters of a class counter field from the continuation lines that follow the data line (CR 145).
+	 * The counters of each class are collected as one row in rows.
+	 */
+	private class ClassCounterReader implements RecordTokenizer.ClassCounterHandler {
+
+		private final LineSource source;
+		private final String rowDelim;
+		private final int rowDelimLength;
+		private final String colDelim;
+		private final String fieldDelim;
+		private final HotPathLog trace;
+		//list of classes which is list of classcounters inside class, required to handle metering and policing class counters present in single row
+		private final ArrayList<ArrayList<NameValuePair>> rows = new ArrayList<ArrayList<NameValuePair>>();
+
+		ClassCounterReader(final LineSource source, final String rowDelim, final int rowDelimLength,
+				final String colDelim, final String fieldDelim, final HotPathLog trace) {
+			this.source = source;
+			this.rowDelim = rowDelim;
+			this.rowDelimLength = rowDelimLength;
+			this.colDelim = colDelim;
+			this.fieldDelim = fieldDelim;
+			this.trace = trace;
+		}
+
+		@Override
+		public String classField(String field) throws Exception {
+			boolean classExist = true;
+			String newField = null;
+			while (classExist) {
+				String classValue = readLine(rowDelim, source, rowDelimLength);
+				if (classValue.contains(colDelim)) {
+					classExist = false;
+					final String[] tempValues = classValue.split(colDelim);
+					if (tempValues.length == 2) {
+						classValue = tempValues[0];
+						newField = tempValues[1];
+					}
+				}
+				final ArrayList<NameValuePair> classList = handleClassCounters(field, classValue, fieldDelim, colDelim, trace);
+				if (!(classList.isEmpty())) {
+					rows.add(classList); //This is required to handle metering policing class counters coming in a single row
+				}
+				if ((newField != null) && ((newField.contains(meteringClass)) || (newField.contains(policingClass)))) {
+					if (trace.traced()) {
+						trace.log("Next field is class:" + newField);
+					}
+					field = newField;
+					classExist = true;
+					newField = null;
+				}
+			}
+			return field;
+		}
+	}
+
+	private void parseRecords(final ParseContext ctx, final LineSource source, final int rowDelimLength, final String colDelim,
 			final String rowDelim, final String fieldDelim, final String firstLine,final String tag_id) throws Exception {
-		String line;
-		final String colAppender ="_agg";
+		CharSequence line;
 		long lineNum = 1;
 
 		log.log(Level.FINEST, "Parse Records type");
 
+		if (ctx.recordTokenizer == null) {
+			ctx.recordTokenizer = new RecordTokenizer(colDelim.charAt(0), fieldDelim.charAt(0), log);
+		}
+
+		//CR 145 changes
+		ClassCounterReader classCounters = null;
+		if (tag_id.indexOf(ctx.policyName + "_c") >= 0) {
+			classCounters = new ClassCounterReader(source, rowDelim, rowDelimLength, colDelim, fieldDelim, ctx.trace);
+		}
+
+		// Mapped files are tokenized directly from the bytes. Class counter files read continuation lines while a line
+		// is tokenized, so they always get String lines.
+		MappedLineScanner mappedSource = null;
+		if ((source instanceof MappedLineScanner) && (classCounters == null)) {
+			mappedSource = (MappedLineScanner) source;
+		}
+
 		if (firstLine.contains("epochtime")) {
 			line = firstLine;
 			log.warning("The 1st line of source file is not a header.");
+			if (ctx.chunkSize > 0) {
+				log.info("File " + ctx.filename + " is parsed line by line, not in chunks, as it has no header line");
+			}
+		} else if (ctx.chunkSize > 0) {
+			parseChunks(ctx, source, classCounters != null, rowDelim, rowDelimLength, colDelim, fieldDelim);
+			flushRop(ctx);
+			return;
 		} else {
-			line = readLine(rowDelim, br, rowDelimLength);
+			line = readLine(rowDelim, source, rowDelimLength);
 			lineNum++;
 		}
 
 		log.log(Level.FINE, "First dataline: " + line);
+		parseLines(ctx, source, line, lineNum, classCounters, mappedSource, rowDelim, rowDelimLength, ctx.trace,
+				ctx.metrics, null);
+		flushRop(ctx);
+	}
+
+	/**
+	 * Parses the data lines of source, starting from line, until the end of source or an empty line. The rows of the
+	 * lines are stored to the ROP store of ctx, or collected to chunk if it is given.
+	 * 
+	 * @return true if an empty line was found, so the data of the file ended
+	 */
+	private boolean parseLines(final ParseContext ctx, final LineSource source, CharSequence line, long lineNum,
+			final ClassCounterReader classCounters, final MappedLineScanner mappedSource, final String rowDelim,
+			final int rowDelimLength, final HotPathLog trace, final FileMetrics metrics, final ParsedChunk chunk)
+			throws Exception {
 		// While read line from file is not null
 		while ((line != null) && (line.length() > 0)) {
-			final String[] result = line.split(colDelim);
 			final ArrayList<NameValuePair> list = new ArrayList<NameValuePair>();
-			ArrayList<NameValuePair> classList = new ArrayList<NameValuePair>(); //list of classes which is list of classcounters inside class
-			ArrayList<ArrayList<NameValuePair>> classList_total = new ArrayList<ArrayList<NameValuePair>>(); //required to handle metering and policing class counters present in single row
+			trace.nextRow();
 			try {
-
-				for ( String field : result) {
-					log.log(Level.FINEST, "Field: " + field);
-					boolean joinedValues = false;
-					String counterValJoined = null;
-					String keySecond = null;
-					String valueSecond = null;
-
-
-					// String[] items = field.split(fieldDelim);
-					String key =null , value =null;
-					if (field.contains("epochtime")) {
-						final String[] items = field.split(fieldDelim);
-						key = items[items.length - 2].trim();
-						value = items[items.length - 1].trim();
-					}else if((field.contains(meteringClass)) || field.contains(policingClass)){ //CR 145 changes
-						if((tag_id.indexOf(policyName + "_c")>=0)){
-							boolean classExist = true;
-							String newField = null;
-							while(classExist){
-								String classValue = readLine(rowDelim, br, rowDelimLength);
-								if (classValue.contains(colDelim)){
-									classExist = false;
-									String[] tempValues =  classValue.split(colDelim);
-									if(tempValues.length == 2 ){
-										classValue = tempValues[(tempValues.length)-2];
-										newField =  tempValues[(tempValues.length)-1];
-									}
-								}
-								classList = handleClassCounters(field,classValue,fieldDelim,colDelim);
-								if(!(classList.isEmpty())){
-									classList_total.add(classList); //This is required to handle metering policing class counters coming in a single row
-								}
-								if(((newField != null)) && ((newField.contains(meteringClass)) || (newField.contains(policingClass)))){
-									log.log(Level.FINEST,"Next field is class:"+newField);
-									field = newField;
-									classExist = true;
-									newField = null;
-									continue;
-								}
-							}
-						}
-						else {
-							final String[] items = field.split(fieldDelim);
-							key = items[items.length - 2].trim();
-							value = items[items.length - 1].trim();
-							//If no class counters are present then value will be N/A
-						}
-					} 
-					else {
-						key = field.substring(0, field.indexOf(fieldDelim)).trim();
-						counterValJoined = field.substring(field.indexOf(fieldDelim)+1).trim();
-						String[] splitValues = counterValJoined.split("\\s+");
-						log.log(Level.FINEST, "Counter has " + splitValues.length + " values");
-						if (splitValues.length == 2){		
-							keySecond = key+colAppender;
-							value = splitValues[0];
-							valueSecond = splitValues[1];
-							joinedValues = true;
-						}
-						else{
-							value = counterValJoined;
-						}
-					}
-					if (field.indexOf(fieldDelim) < 1) {
-						log.log(Level.WARNING, " Error while parsing data from: " + field);
-
-					} else {
-						if (key!=null || value != null){
-						list.add(new NameValuePair(key, value));
-						
-						if(joinedValues){
-							list.add(new NameValuePair(keySecond,valueSecond));
-							log.log(Level.FINEST, "Key::" + keySecond+" Value:: " + valueSecond);
-						}
-					}
-				}
+				if (classCounters != null) {
+					classCounters.rows.clear();
+					ctx.recordTokenizer.tokenize(line, list, classCounters);
+				} else {
+					ctx.recordTokenizer.tokenize(line, list);
 				}
 			} catch (final Exception e) {
-
 				log.log(Level.WARNING, "Error while parsing dataline, skipping(" + lineNum + "): " + line, e);
 			}
-			
+			if (trace.traced()) {
+				trace.log("Parsed line " + lineNum + ": " + HotPathLog.toString(list));
+			}
+
+			metrics.lines++;
+			metrics.enter(Phase.VALIDATE);
 			//CR 145 changes
-			if(!(classList_total.isEmpty())){ 
+			if ((classCounters != null) && !(classCounters.rows.isEmpty())) {
 				//Add one row for each class in metering or policing class counter
-				for(ArrayList<NameValuePair> listtmp: classList_total){//get one row of class counter
+				for(ArrayList<NameValuePair> listtmp: classCounters.rows){//get one row of class counter
 					ArrayList<NameValuePair> listdup = new ArrayList<NameValuePair>();
-					listdup.addAll(list.subList(0,(groupKeys.length-2)));//get policy keys from common list
+					listdup.addAll(list.subList(0,(ctx.groupKeys.length-2)));//get policy keys from common list
 					listdup.addAll(listtmp);//add list for class counters after adding policy keys
-					log.log(Level.FINEST,"Adding classlist for storing row");
-					if(!(checkGroupKeys(listdup))){
+					if (trace.traced()) {
+						trace.log("Adding classlist for storing row");
+					}
+					if(!(checkGroupKeys(ctx, listdup))){
+						metrics.skippedLines++;
 						log.log(Level.WARNING, "Error in the class counter group keys, skipping(" + lineNum + "): " + line);
 					}
 					else{
-						storeRow(listdup); //store row with keys + class counters present in metering or policing class counter
+						metrics.enter(Phase.MERGE);
+						storeRow(ctx, listdup, chunk); //store row with keys + class counters present in metering or policing class counter
+						metrics.enter(Phase.VALIDATE);
 					}
 				}
 			} else{
-			if (!checkGroupKeys(list)) {
+			if (!checkGroupKeys(ctx, list)) {
+				metrics.skippedLines++;
 				log.log(Level.WARNING, "Error in the group keys, skipping(" + lineNum + "): " + line);
 				}
 				else{
-				storeRow(list);
+				metrics.enter(Phase.MERGE);
+				storeRow(ctx, list, chunk);
 			}
 			}	
-			line = readLine(rowDelim, br, rowDelimLength);
+			metrics.enter(Phase.READ);
+			if (mappedSource != null) {
+				line = mappedSource.readLineView(rowDelim, rowDelimLength);
+			} else {
+				line = readLine(rowDelim, source, rowDelimLength);
+			}
 			lineNum++;
 		}
-		final Iterator<ArrayList<NameValuePair>> ropRecords = rop_dataStoreMap.values().iterator();
-		while (ropRecords.hasNext()) {
-			final ArrayList<NameValuePair> record = ropRecords.next();
-			final StringBuffer keyBuff = new StringBuffer(groupKeys.length);
-			for(String keyInGroupKeys : groupKeys){
-				for (final NameValuePair a : record) {
-					if(keyInGroupKeys.equalsIgnoreCase(a.m_name)){
-						keyBuff.append(a.m_name+a.m_value);
-					}				
+		return line != null;
+	}
+
+	/**
+	 * Rows of a chunk of a large file, collected in file order by a chunk pool thread
+	 */
+	private static final class ParsedChunk {
+		final ArrayList<ArrayList<NameValuePair>> rows = new ArrayList<ArrayList<NameValuePair>>();
+		final ArrayList<RecordKey> keys = new ArrayList<RecordKey>();
+		// Lines and skipped lines of the chunk
+		final FileMetrics metrics = new FileMetrics();
+		// True if the chunk has the empty line that ends the data of the file
+		boolean ended = false;
+		// Failure that stopped the parsing of the chunk, after the collected rows
+		Exception failure = null;
+	}
+
+	/**
+	 * Parses the data lines of a large file in chunks of about ctx.chunkSize bytes (interface property
+	 * redback.chunkSize). This thread splits the file at line boundaries, the chunks are tokenized and validated in
+	 * the chunk pool, and their rows are stored here in file order. The ROPs are found by storeRow as when the file is
+	 * parsed line by line, so the result is the same. The lines of a class counter record (CR 145) are kept in one
+	 * chunk: a chunk only ends before a line with epochtime. The data ends at an empty line, as in parseLines.
+	 */
+	private void parseChunks(final ParseContext ctx, final LineSource source, final boolean classPolicy,
+			final String rowDelim, final int rowDelimLength, final String colDelim, final String fieldDelim)
+			throws Exception {
+		final ExecutorService pool = chunkPool();
+		final String lineStart = classPolicy ? "epochtime" : null;
+		log.fine("Parsing " + ctx.filename + " in chunks of " + ctx.chunkSize + " bytes with " + chunkThreads
+				+ " threads");
+
+		final LinkedList<Future<ParsedChunk>> pending = new LinkedList<Future<ParsedChunk>>();
+		// Set when no more chunks are stored, the chunks that have not started are then skipped
+		final AtomicBoolean stopped = new AtomicBoolean(false);
+		boolean ended = false;
+		// Set when the reader reaches the empty line that ends the data
+		boolean lastChunk = false;
+		String carried = null;
+		try {
+			while (!ended && !lastChunk) {
+				LineSource chunkSource;
+				if (source instanceof MappedLineScanner) {
+					chunkSource = ((MappedLineScanner) source).nextChunk(ctx.chunkSize, rowDelim, lineStart);
+				} else {
+					// The line after the chunk is carried to the next chunk
+					final ListLineSource lines = new ListLineSource();
+					String line = (carried != null) ? carried : readLine(rowDelim, source, rowDelimLength);
+					carried = null;
+					while (line != null) {
+						if (lines.length() >= ctx.chunkSize && (lineStart == null || line.contains(lineStart))) {
+							carried = line;
+							break;
+						}
+						lines.add(line);
+						if (line.length() == 0) {
+							// The data ends at an empty line as in parseLines, the lines after it are not read
+							lastChunk = true;
+							break;
+						}
+						line = readLine(rowDelim, source, rowDelimLength);
+					}
+					chunkSource = (lines.length() > 0) ? lines : null;
+				}
+				if (chunkSource == null) {
+					break;
+				}
+				final LineSource chunkLines = chunkSource;
+				final HotPathLog chunkTrace = ctx.trace.copy();
+				pending.add(pool.submit(new Callable<ParsedChunk>() {
+					@Override
+					public ParsedChunk call() {
+						final ParsedChunk chunk = new ParsedChunk();
+						if (stopped.get()) {
+							return chunk;
+						}
+						try {
+							ClassCounterReader classCounters = null;
+							if (classPolicy) {
+								classCounters = new ClassCounterReader(chunkLines, rowDelim, rowDelimLength, colDelim,
+										fieldDelim, chunkTrace);
+							}
+							MappedLineScanner mappedSource = null;
+							CharSequence line;
+							if ((chunkLines instanceof MappedLineScanner) && !classPolicy) {
+								mappedSource = (MappedLineScanner) chunkLines;
+								line = mappedSource.readLineView(rowDelim, rowDelimLength);
+							} else {
+								line = readLine(rowDelim, chunkLines, rowDelimLength);
+							}
+							// Line numbers in the log are counted from the start of the chunk
+							chunk.ended = parseLines(ctx, chunkLines, line, 1, classCounters, mappedSource, rowDelim,
+									rowDelimLength, chunkTrace, chunk.metrics, chunk);
+						} catch (final Exception e) {
+							chunk.failure = e;
+						}
+						return chunk;
+					}
+				}));
+				if (pending.size() > 2 * chunkThreads) {
+					ended = storeChunk(ctx, pending.removeFirst());
+				}
+			}
+			while (!ended && !pending.isEmpty()) {
+				ended = storeChunk(ctx, pending.removeFirst());
+			}
+		} finally {
+			// Chunks after the end of data or a failure are not stored. They use the parse state of ctx, so they are
+			// waited for before ctx is released and reused for another file.
+			stopped.set(true);
+			for (final Future<ParsedChunk> chunk : pending) {
+				try {
+					chunk.get();
+				} catch (final ExecutionException e) {
+					log.log(Level.FINE, "Chunk after the end of data failed", e);
 				}
 			}
-			final String key = keyBuff.toString();
-			
-			m_dataStoreMap.put(key, record);
 		}
-		rop_dataStoreMap.clear();
+	}
+
+	/**
+	 * Stores the rows of a parsed chunk to the ROP store, in file order.
+	 * 
+	 * @return true if the data of the file ended in the chunk
+	 * @throws Exception
+	 *             failure that stopped the parsing of the chunk
+	 */
+	private boolean storeChunk(final ParseContext ctx, final Future<ParsedChunk> future) throws Exception {
+		final ParsedChunk chunk = future.get();
+		ctx.metrics.enter(Phase.MERGE);
+		for (int i = 0; i < chunk.rows.size(); i++) {
+			storeRow(ctx, chunk.rows.get(i), chunk.keys.get(i));
+		}
+		ctx.metrics.enter(Phase.READ);
+		ctx.metrics.lines += chunk.metrics.lines;
+		ctx.metrics.skippedLines += chunk.metrics.skippedLines;
+		if (chunk.failure != null) {
+			throw chunk.failure;
+		}
+		return chunk.ended;
+	}
+
+	/**
+	 * @return pool of the chunk threads (interface property redback.chunkThreads), created for the first chunked
+	 *         file
+	 */
+	private synchronized ExecutorService chunkPool() {
+		if (chunkPool == null) {
+			chunkPool = daemonPool(chunkThreads, "chunk");
+		}
+		return chunkPool;
+	}
+
+	/**
+	 * @return pool of the emit threads (interface property redback.emitThreads), created for the first file with
+	 *         more than one ROP
+	 */
+	private synchronized ExecutorService emitPool() {
+		if (emitPool == null) {
+			emitPool = daemonPool(emitThreads, "emit");
+		}
+		return emitPool;
+	}
+
+	/**
+	 * @return fixed pool of daemon threads named RedbackParser&lt;workerName&gt;-&lt;kind&gt;-&lt;n&gt;
+	 */
+	private ExecutorService daemonPool(final int threads, final String kind) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int threadCount = 0;
+
+			@Override
+			public synchronized Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "RedbackParser" + workerName + "-" + kind + "-"
+						+ (++threadCount));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 	}
 
 	/**
 	 * This method checks the input parameter for a valid policy name, and sets the groupKeys class object to the value
-	 * of the corresponding hardcoded list of group keys. If no valid policy name is found and exception is thrown, and
-	 * parsing of file will not continue.
+	 * of the corresponding hardcoded list of group keys, or to the group keys of interface property
+	 * redback.groupKeys.&lt;tag_id&gt; for a policy that is not built in. If no valid policy name is found and exception
+	 * is thrown, and parsing of file will not continue. The group keys are compiled into a GroupKeySchema, which is cached by tag_id
+	 * and property value so the lookup is only done for the first file of each policy. Group keys of the property that
+	 * are empty or given twice also stop the parsing of the file.
 	 * 
 	 * @param tag_id
 	 *            String that should have a valid policy/schema name
 	 * @throws Exception
 	 */
-	private void setGroupKeys(final String tag_id) throws Exception {
+	private void setGroupKeys(final ParseContext ctx, final String tag_id) throws Exception {
 		final String partPolicyName = "PM_policy_";
-		String[] nullableKeyInit = {};
-		
-		// Check the policy and set groupKeys accordingly
-		if (tag_id.indexOf(partPolicyName + "global") >= 0) {
-			tempGroupKeys = this.GLOBAL_POLICY_KEYS;
-			policyName = partPolicyName + "global" ;
-		} else if (tag_id.indexOf(partPolicyName + "port") >= 0) {
-			tempGroupKeys = this.PORT_POLICY_KEYS;
-			policyName = partPolicyName + "port";
-		} else if (tag_id.indexOf(partPolicyName + "channel") >= 0) {
-			tempGroupKeys = this.CHANNEL_POLICY_KEYS;
-			policyName = partPolicyName + "channel";
-		} else if (tag_id.indexOf(partPolicyName + "dot1q") >= 0) {
-			tempGroupKeys = this.DOT1Q_POLICY_KEYS;
-			policyName = partPolicyName + "dot1q";
-			nullableKeyInit = this.DOT1Q_POLICY_KEYS_NULLABLE;
-		} else if (tag_id.indexOf(partPolicyName + "atm") >= 0) {
-			tempGroupKeys = this.ATM_POLICY_KEYS;
-			policyName = partPolicyName + "atm";
-		} else if (tag_id.indexOf(partPolicyName + "fr") >= 0) {
-			tempGroupKeys = this.FRAMERELAY_POLICY_KEYS;
-			policyName = partPolicyName + "fr";
-		} else if (tag_id.indexOf(partPolicyName + "sub") >= 0) {
-			tempGroupKeys = this.SUBSCRIBER_POLICY_KEYS;
-			policyName = partPolicyName + "sub";
-		} else if (tag_id.indexOf(partPolicyName + "context") >= 0) {
-			tempGroupKeys = this.CONTEXT_POLICY_KEYS;
-			policyName = partPolicyName + "context";
-		} else if (tag_id.indexOf(partPolicyName + "linkgroup") >= 0) {
-			tempGroupKeys = this.LINKGROUP_POLICY_KEYS;
-			policyName = partPolicyName + "linkgroup";
-		}else if (tag_id.indexOf(partPolicyName + "link") >= 0){
-			tempGroupKeys = this.LINKGROUP_POLICY_KEYS;
-			policyName = partPolicyName + "link";
-		} else if (tag_id.indexOf(partPolicyName + "eps_apn") >= 0) {
-			tempGroupKeys = this.EPS_APN_POLICY_KEYS;
-			policyName = partPolicyName + "eps_apn";
-		} else if (tag_id.indexOf(partPolicyName + "eps_ctrl") >= 0) {
-			tempGroupKeys = this.EPS_CONTROL_POLICY_KEYS;
-			policyName = partPolicyName + "eps_ctrl";
-		} else if (tag_id.indexOf(partPolicyName + "eps_traf") >= 0) {
-			tempGroupKeys = this.EPS_TRAFFIC_POLICY_KEYS;
-			policyName = partPolicyName + "eps_traf";
-		} else if (tag_id.indexOf(partPolicyName + "aspcpu") >= 0) {
-			tempGroupKeys = this.ASP_CPU_POLICY_KEYS;
-			policyName = partPolicyName + "aspcpu";
-		} else if (tag_id.indexOf(partPolicyName + "aspload") >= 0) {
-			tempGroupKeys = this.ASP_LOAD_POLICY_KEYS;
-			policyName = partPolicyName + "aspload";
-		} else if (tag_id.indexOf(partPolicyName + "aspmem") >= 0) {
-			tempGroupKeys = this.ASP_MEM_POLICY_KEYS;
-			policyName = partPolicyName + "aspmem";
-		} else if (tag_id.indexOf(partPolicyName + "ppa") >= 0) {
-			tempGroupKeys = this.PPA_CPU_POLICY_KEYS;
-			policyName = partPolicyName + "ppa";
-		} else if (tag_id.indexOf(partPolicyName + "aspepscpu") >= 0) {
-			tempGroupKeys = this.ASP_EPS_CPU_POLICY_KEYS;
-			policyName = partPolicyName + "aspepscpu";
-		} else {
+
+		GroupKeySchema schema = GroupKeySchema.cached(tag_id, ctx.groupKeysProperty);
+		if (schema == null) {
+			// Check the policy and compile the group keys of it
+			for (final Map.Entry<String, String[]> policy : POLICY_GROUP_KEYS.entrySet()) {
+				final String name = partPolicyName + policy.getKey();
+				if (tag_id.indexOf(name) >= 0) {
+					final String[] nullableKeyInit = policy.getValue() == DOT1Q_POLICY_KEYS ? DOT1Q_POLICY_KEYS_NULLABLE
+							: new String[0];
+					//CR 145 changes
+					String[] keys = policy.getValue();
+					if ((tag_id.indexOf(name + "_c") >= 0)) {
+						keys = new String[policy.getValue().length + CLASS_POLICY_KEYS.length];
+						System.arraycopy(policy.getValue(), 0, keys, 0, policy.getValue().length);
+						System.arraycopy(CLASS_POLICY_KEYS, 0, keys, policy.getValue().length, CLASS_POLICY_KEYS.length);
+					}
+					schema = new GroupKeySchema(name, keys, nullableKeyInit);
+					GroupKeySchema.cache(tag_id, ctx.groupKeysProperty, schema);
+					break;
+				}
+			}
+		}
+		if (schema == null && ctx.groupKeysProperty != null) {
+			// Policy that is not built in, group keys given in interface property redback.groupKeys.<tag_id>
+			final String[] keys = ctx.groupKeysProperty.split(",");
+			for (int i = 0; i < keys.length; i++) {
+				keys[i] = keys[i].trim();
+			}
+			try {
+				schema = new GroupKeySchema(tag_id, keys, new String[0]);
+			} catch (final IllegalArgumentException e) {
+				log.severe("Invalid interface property redback.groupKeys." + tag_id + " (" + ctx.groupKeysProperty
+						+ "): " + e.getMessage() + ". Source filename " + ctx.filename
+						+ ". Parsing of this file will not proceed.");
+				throw new Exception("Invalid group keys of policy " + tag_id + ": " + e.getMessage());
+			}
+			GroupKeySchema.cache(tag_id, ctx.groupKeysProperty, schema);
+		}
+		if (schema == null) {
 			// Parsing of this file cannot proceed without knowing what policy (schema) the file has. Exception thrown.
-			log.severe("Invalid Policy name (" + tag_id + ") found. Source filename " + this.filename
+			log.severe("Invalid Policy name (" + tag_id + ") found. Source filename " + ctx.filename
 					+ ". Parsing of this file will not proceed.");
 			throw new Exception("Invalid Policy name found in filename.");
 		}
-		
-		nullableKeys = nullableKeyInit;
-//CR 145 changes
-		if ((tag_id.indexOf(policyName + "_c") >= 0)){
-			groupKeys = new String[tempGroupKeys.length+CLASS_POLICY_KEYS.length];
-			System.arraycopy(tempGroupKeys, 0, groupKeys, 0, tempGroupKeys.length);
-			System.arraycopy(CLASS_POLICY_KEYS, 0, groupKeys,tempGroupKeys.length , CLASS_POLICY_KEYS.length);
-		}
-		else{
-			groupKeys = tempGroupKeys;
-		}
+
+		ctx.groupKeySchema = schema;
+		ctx.policyName = schema.getPolicyName();
+		ctx.groupKeys = schema.getGroupKeys();
 	}
 
 	/**
-	 * read characters from reader until eof or delimiter is encountered.
+	 * read characters from line source until eof or delimiter is encountered.
 	 * 
 	 * @param delimiter
 	 *            row delimiter
-	 * @param br
-	 *            reader
+	 * @param source
+	 *            line source of the file (reader or mapped file)
 	 * @param rowDelimLength
 	 *            row delim length
 	 * @return read text line
 	 * @throws Exception
 	 */
-	private String readLine(final String delimiter, final BufferedReader br, final int rowDelimLength) throws Exception {
-
-		final char[] tmp = new char[bufferSize];
-
-		while (true) {
-
-			final String[] result = this.block.split(delimiter);
-
-			// delimiter found
-			if (result.length > 1) {
-
-				// remove discovered token + deliminator from block
-				block = block.substring(result[0].length() + rowDelimLength);
-
-				log.log(Level.FINEST, "result: " + result[0]);
-
-				// return found block
-				return result[0];
-
-			} else {
-				// delimiter not found, read next block
-				final int count = br.read(tmp, 0, bufferSize);
-
-				// if end of file return whole block
-				if (count == -1) {
-					return null;
-				}
+	private String readLine(final String delimiter, final LineSource source, final int rowDelimLength) throws Exception {
 
-				this.block += (new String(tmp));
+		final String result = source.readLine(delimiter, rowDelimLength);
 
-			}
+		if (HotPathLog.finest(log)) {
+			log.log(Level.FINEST, "result: " + result);
 		}
+
+		return result;
 	}
 
 	/**
@@ -897,21 +1266,23 @@ public class RedbackParser extends DefaultHandler implements Parser {
 		try {
 
 			this.status = 2;
-			SourceFile sf = null;
+			InputFile sf = null;
 			parseStartTime = System.currentTimeMillis();
 
-			while ((sf = mainParserObject.nextSourceFile()) != null) {
-
-				try {
-					fileCount++;
-					fileSize += sf.fileSize();		  
-					mainParserObject.preParse(sf);
-					parse(sf, techPack, setType, setName);
-					mainParserObject.postParse(sf);
-				} catch (final Exception e) {
-					mainParserObject.errorParse(e, sf);
-				} finally {
-					mainParserObject.finallyParse(sf);
+			sf = host.nextSourceFile();
+			if (sf != null) {
+				exporters = createExporters(sf.getProperty("redback.metricsExporters", null));
+				chunkThreads = Integer.parseInt(sf.getProperty("redback.chunkThreads",
+						String.valueOf(Runtime.getRuntime().availableProcessors())));
+				emitThreads = Integer.parseInt(sf.getProperty("redback.emitThreads", "0"));
+				final int poolSize = Integer.parseInt(sf.getProperty("redback.workerPoolSize", "1"));
+				if (poolSize > 1) {
+					runPool(sf, poolSize);
+				} else {
+					while (sf != null) {
+						parseSourceFile(sf);
+						sf = host.nextSourceFile();
+					}
 				}
 			}
 			totalParseTime = System.currentTimeMillis() - parseStartTime;
@@ -926,10 +1297,102 @@ public class RedbackParser extends DefaultHandler implements Parser {
 			// Exception at top level
 			log.log(Level.WARNING, "Worker parser failed to exception", e);
 		} finally {
+			synchronized (this) {
+				if (chunkPool != null) {
+					chunkPool.shutdown();
+					chunkPool = null;
+				}
+				if (emitPool != null) {
+					emitPool.shutdown();
+					emitPool = null;
+				}
+			}
 			this.status = 3;
 		}
 	}
 
+	/**
+	 * Parses the source files of this worker in a pool of poolSize threads. The pool threads share this parser, each
+	 * file is parsed with its own ParseContext. When all pool threads are busy, the next file is parsed by this
+	 * thread, so source files are not taken from the host faster than they are parsed. The host callbacks of
+	 * different files are called from the pool threads at the same time (see ParserHost).
+	 * 
+	 * As when the files are parsed one at a time, a failing host callback stops the worker: no more source files are
+	 * taken from the host, the files already taken are parsed, and the failure is thrown.
+	 * 
+	 * @param first
+	 *            first source file of this worker
+	 * @param poolSize
+	 *            number of pool threads
+	 * @throws Exception
+	 *             the first failure of a host callback
+	 */
+	private void runPool(final InputFile first, final int poolSize) throws Exception {
+		log.info("Parsing with " + poolSize + " pool threads");
+
+		final ThreadFactory threadFactory = new ThreadFactory() {
+			private int threadCount = 0;
+
+			@Override
+			public synchronized Thread newThread(final Runnable runnable) {
+				return new Thread(runnable, "RedbackParser" + workerName + "-" + (++threadCount));
+			}
+		};
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(poolSize), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		try {
+			InputFile sf = first;
+			while (sf != null) {
+				final InputFile file = sf;
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							parseSourceFile(file);
+						} catch (final Exception e) {
+							failure.compareAndSet(null, e);
+						}
+					}
+				});
+				sf = (failure.get() == null) ? host.nextSourceFile() : null;
+			}
+		} finally {
+			pool.shutdown();
+			while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+				log.fine("Waiting for " + pool.getActiveCount() + " pool threads to finish");
+			}
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
+	/**
+	 * Parses one source file and calls the host callbacks of it, in the order preParse, postParse (or
+	 * errorParse) and finallyParse.
+	 * 
+	 * @throws Exception
+	 *             if a callback of the host fails
+	 */
+	private void parseSourceFile(final InputFile sf) throws Exception {
+		try {
+			countFile(sf.fileSize());
+			host.preParse(sf);
+			parseFile(sf, techPack, setType, setName);
+			host.postParse(sf);
+		} catch (final Exception e) {
+			host.errorParse(e, sf);
+		} finally {
+			host.finallyParse(sf);
+		}
+	}
+
+	private synchronized void countFile(final long size) {
+		fileCount++;
+		fileSize += size;
+	}
+
 	/**
 	 * @return status of the parser
 	 */
@@ -940,28 +1403,21 @@ public class RedbackParser extends DefaultHandler implements Parser {
 	}
 
 	public long timeAdjust(final String value) {
-		final long epochTime = Long.decode(value); // get epochtime as a double
-		final double divider = 900; // The num of sec in a ROP
-
-		final double multi = epochTime / divider; // The total num of ROPs since 1970 (or whenever it was)
-
-		final long multiRound = (long) Math.floor(multi); // Round down to nearest integer (in other words round down
-															// the number of ROP).
-		final long adjusted = multiRound * 900; // Convert back from num of ROPs to epochtime.
-		return adjusted;
+		// Round down to the start of the 15 minute ROP
+		return RopClock.of(RopClock.DEFAULT_ROP_LENGTH).align(Long.decode(value));
 	}
 
 	/**
-	 * Repeated calls to this method collects parsed data into records in rop_dataStoreMap (rop_dataStoreMap is
-	 * initialised if null), and ultimately copies the data to m_dataStoreMap. rop_dataStoreMap is for collecting data
-	 * from current ROP being processed, and m_dataStoreMap is for collecting multiple ROPs of data. If data submitted
-	 * to this method is found to belong to the next ROP (this is checked by examining epochtime value) this indicates
-	 * that collection of current ROP has finished and next ROP has started, and so all records in rop_dataStoreMap get
-	 * transfered to m_dataStoreMap, and rop_dataStoreMap is set to null.
+	 * Repeated calls to this method collect parsed data into records in the ROP partitions of the parse context, and
+	 * ultimately the partitions are moved to m_dataStoreMap (or written in streaming mode). Each ROP of the file has its
+	 * own partition, keyed by the start of the ROP: the epochtime of the data rounded down to the ROP length
+	 * (interface property redback.ropLength). So data of a ROP is added to the right partition even if the lines of
+	 * the ROPs are mixed in the file. rop_dataStoreMap is the partition of the latest ROP. In streaming mode a line of
+	 * a ROP that has already been written is skipped with a warning.
 	 * 
-	 * Before adding data to rop_dataStoreMap, this method checks it to see if it belongs to a record already in it (it
+	 * Before adding data to the partition, this method checks it to see if it belongs to a record already in it (it
 	 * does this check by way of unique key). If yes, then it adds the data to the existing record (existing entry) in
-	 * rop_dataStoreMap. If no, then it adds it to rop_dataStoreMap as a new record (new entry).
+	 * the partition. If no, then it adds it to the partition as a new record (new entry).
 	 * 
 	 * The unique key mentioned above consists of the values of the group keys of policy (excluding epochtime key).
 	 * 
@@ -970,67 +1426,223 @@ public class RedbackParser extends DefaultHandler implements Parser {
 	 *            PM file. It may consist of a partial record of data or full record (a record corresponds to 1 row in
 	 *            the dwhdb table to which the data will ultimately be loaded).
 	 */
-	private void storeRow(final ArrayList<NameValuePair> list) {
-		
-		// Make a key made up of a concatenation of all group keys (excluding epochtime).
-		final StringBuffer keyBuff = new StringBuffer(groupKeys.length-1);
+	private void storeRow(final ParseContext ctx, final ArrayList<NameValuePair> list) throws Exception {
 		
-		for(String keyInGroupKeys : groupKeys){
-			for (final NameValuePair a : list.subList(1,list.size())) {
-			//TR HS54247
-				if(keyInGroupKeys.equalsIgnoreCase(a.m_name)){
-					keyBuff.append(a.m_name+a.m_value);
-				}				
-			}
+		// Make a key made up of all group key values (excluding epochtime).
+		//TR HS54247
+		storeRow(ctx, list, ctx.groupKeySchema.buildKey(list, 1));
+	}
+
+	/**
+	 * Stores the row to the ROP store, or collects it to chunk with its key if chunk is given.
+	 */
+	private void storeRow(final ParseContext ctx, final ArrayList<NameValuePair> list, final ParsedChunk chunk)
+			throws Exception {
+		if (chunk == null) {
+			storeRow(ctx, list);
+		} else {
+			chunk.rows.add(list);
+			chunk.keys.add(ctx.groupKeySchema.buildKey(list, 1));
 		}
-		final String key = keyBuff.toString();
-		
+	}
 
-		if (m_dataStoreMap == null) {
-			m_dataStoreMap = new TreeMap<String, ArrayList<NameValuePair>>();
+	/**
+	 * @see #storeRow(ParseContext, ArrayList)
+	 * @param key
+	 *            key of the row, made up of all group key values (excluding epochtime)
+	 */
+	private void storeRow(final ParseContext ctx, final ArrayList<NameValuePair> list, final RecordKey key)
+			throws Exception {
+		final long epochtime = EpochtimePair.seconds(EpochtimePair.find(list));
+		final RopClock clock = (ctx.ropClock != null) ? ctx.ropClock : RopClock.of(RopClock.DEFAULT_ROP_LENGTH);
+		final long ropStart = clock.align(epochtime);
+		if (ctx.emittedRops.contains(ropStart)) {
+			// The record of the line has been written already, a second partial row would be loaded for it
+			log.warning("Skipping line of a ROP that has already been written. Epochtime: " + epochtime);
+			ctx.metrics.skippedLines++;
+			return;
+		}
+		final int rops = ctx.ropCount;
+		final Map<RecordKey, RopRecord> rop = ctx.ropPartition(ropStart);
+		if (ctx.ropCount > rops && rops > 0) {
+			log.info("Additional ROP found in file. Epochtime: " + epochtime);
+			ctx.metrics.extraRops++;
+			if (ctx.streamingOutput && ropStart == ctx.latestRop) {
+				// The ROP before the new one is kept open for late lines, older ROPs are written
+				flushRops(ctx, ropStart - clock.getRopLength());
+			}
 		}
 
-		if (rop_dataStoreMap == null) {
-			rop_dataStoreMap = new TreeMap<String, ArrayList<NameValuePair>>();
-			
-			rop_dataStoreMap.put(key, list); // Add the first data of this rop to the rop store.
+		final RopRecord stored = rop.get(key);
+		if (stored != null) {
+			// The group key values in this data (apart from epochtime) match an already found record in the ROP
+			stored.addAll(list);
 		} else {
-			final long foundEpochtime = Integer.parseInt(list.get(0).m_value);
-
-			if (rop_dataStoreMap.containsKey(key)) {
-				// The group key values in this data (apart from epochtime) match an already found record in current ROP
-				final long storedEpochtime = Integer.parseInt(rop_dataStoreMap.get(key).get(0).m_value);
-				if ((foundEpochtime < (storedEpochtime + 900)) && (foundEpochtime > (storedEpochtime - 900))) {
-					// This data belongs to current ROP. Adding it to existing entry in rop datastore.
-					rop_dataStoreMap.get(key).addAll(list);					
+			// This data is a new found record in the ROP, add it as a new entry in the partition.
+			rop.put(key, new RopRecord(key, ctx.groupKeySchema.getCounters(), list));
+		}
+	}
+
+	/**
+	 * Completes all ROPs of the file.
+	 * 
+	 * @see #flushRops(ParseContext, long)
+	 */
+	private void flushRop(final ParseContext ctx) throws Exception {
+		flushRops(ctx, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Completes the ROPs of the file that start before the given time, in ROP order. Each partition is moved to
+	 * m_dataStoreMap as it is, so the records are not copied and the ROPs can be written independently of each other
+	 * (see emitRops).
+	 * 
+	 * In streaming mode the records are written to the measurement file instead, so only the latest two ROPs are kept
+	 * in memory. A line that comes after its ROP has been written is skipped (see storeRow).
+	 */
+	private void flushRops(final ParseContext ctx, final long before) throws Exception {
+		final ArrayList<Long> starts = new ArrayList<Long>();
+		for (final Long start : ctx.ropPartitions.keySet()) {
+			if (start < before) {
+				starts.add(start);
+			}
+		}
+		Collections.sort(starts);
+		for (final Long start : starts) {
+			final Map<RecordKey, RopRecord> rop = ctx.ropPartitions.remove(start);
+			if (start == ctx.latestRop) {
+				ctx.latestRop = Long.MIN_VALUE;
+			}
+			if (ctx.groupKeySchema != null) {
+				ctx.groupKeySchema.ropCompleted(rop.size());
+			}
+			if (ctx.streamingOutput) {
+				final Phase previous = ctx.metrics.enter(Phase.EMIT);
+				for (final RopRecord record : ropRecords(rop, ctx.sortedOutput)) {
+					ctx.emitter.emit(record);
 				}
-				else {
-					// We have come to the 1st line of data of the next ROP!!
-					log.info("Additional ROP found in file. Epochtime: " + foundEpochtime);
-					// Copy all records in rop_dataStoreMap to m_dataStoreMap.
-					final Iterator<ArrayList<NameValuePair>> ropRecords = rop_dataStoreMap.values().iterator();
-					while (ropRecords.hasNext()) {
-						final ArrayList<NameValuePair> record = ropRecords.next();
-						final StringBuffer keyBuff2 = new StringBuffer(groupKeys.length);
-						for(String keyInGroupKeys : groupKeys){
-							for (final NameValuePair a : record) {
-								if(keyInGroupKeys.equalsIgnoreCase(a.m_name)){
-							keyBuff2.append(a.m_name+a.m_value);
+				ctx.metrics.enter(previous);
+				ctx.emittedRops.add(start);
+				rop.clear();
+			} else {
+				ctx.m_dataStoreMap.put(start, rop);
+			}
+		}
+	}
+
+	/**
+	 * Writes the completed ROPs of a file in parallel. The first ROP is written to the measurement file of the file by
+	 * this thread, each later ROP by an emit thread to a measurement file session of its own, created by the host for
+	 * the same sourcefile and tag_id with worker name &lt;workerName&gt;_&lt;file number&gt;_rop&lt;n&gt;, unique also
+	 * when files are parsed in parallel by a worker pool. All sessions get the same file
+	 * level columns. The rows and counters of the sessions are added to the metrics of the file when all ROPs are
+	 * written. Every session is closed, also if it fails. A session that is not open fails the file, because the rows
+	 * of its ROP would be lost.
+	 * 
+	 * @throws Exception
+	 *             the first failure of a session, after all sessions have ended
+	 */
+	private void emitRops(final ParseContext ctx, final InputFile sf, final String tagId, final String techPack,
+			final String setType, final String setName, final FileHeader header, final int batchSize) throws Exception {
+		final ArrayList<Long> starts = new ArrayList<Long>(ctx.m_dataStoreMap.keySet());
+		Collections.sort(starts);
+		final ExecutorService pool = emitPool();
+		final boolean sortedOutput = ctx.sortedOutput;
+		final ArrayList<Future<FileMetrics>> sessions = new ArrayList<Future<FileMetrics>>();
+		final String sessionPrefix = workerName + "_" + emittedFiles.incrementAndGet();
+		for (int i = 1; i < starts.size(); i++) {
+			final Map<RecordKey, RopRecord> rop = ctx.m_dataStoreMap.get(starts.get(i));
+			final String sessionName = sessionPrefix + "_rop" + i;
+			final HotPathLog sessionTrace = ctx.trace.copy();
+			sessions.add(pool.submit(new Callable<FileMetrics>() {
+				@Override
+				public FileMetrics call() throws Exception {
+					final FileMetrics metrics = new FileMetrics();
+					final MeasurementFile session = host.createMeasurementFile(sf, tagId, techPack, setType, setName,
+							sessionName, log);
+					try {
+						if (!session.isOpen()) {
+							// The rows of the ROP would be lost, so the file fails
+							throw new Exception("Measurement file " + sessionName + " is not open, " + rop.size()
+									+ " records of the ROP can not be written");
+						}
+						final RecordEmitter emitter = new RecordEmitter(session, header, metrics, sessionTrace,
+								batchSize);
+						for (final RopRecord record : ropRecords(rop, sortedOutput)) {
+							emitter.emit(record);
 						}
+						emitter.flush();
+					} finally {
+						if (session.isOpen()) {
+							try {
+								session.close();
+							} catch (final Exception e) {
+								log.log(Level.WARNING, "Error closing MeasurementFile " + sessionName, e);
 							}
 						}
-						
-						final String key2 = keyBuff2.toString();
-						m_dataStoreMap.put(key2, record);
 					}
-					// Clear the rop datastore (it will now be used for a new ROP) and add the new data to it.
-					rop_dataStoreMap.clear();
-					rop_dataStoreMap.put(key, list);
+					return metrics;
 				}
-			} else {
-				// This data is a new found record in current ROP, add it as a new entry in rop datastore.
-				rop_dataStoreMap.put(key, list);
+			}));
+		}
+		log.fine("Writing " + starts.size() + " ROPs of " + ctx.filename + " with " + emitThreads + " threads");
+
+		Exception failure = null;
+		try {
+			for (final RopRecord record : ropRecords(ctx.m_dataStoreMap.get(starts.get(0)), sortedOutput)) {
+				ctx.emitter.emit(record);
 			}
+		} catch (final Exception e) {
+			failure = e;
+		}
+		for (final Future<FileMetrics> session : sessions) {
+			try {
+				final FileMetrics metrics = session.get();
+				ctx.metrics.rows += metrics.rows;
+				ctx.metrics.counters += metrics.counters;
+			} catch (final ExecutionException e) {
+				if (failure == null) {
+					failure = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
 		}
 	}
+
+	/**
+	 * @param sortedOutput
+	 *            true if the ROPs are ordered by start and their records by epochtime and key (interface property
+	 *            redback.sortedOutput)
+	 * @return iterator over all records of the file store
+	 */
+	private static Iterator<RopRecord> records(final Map<Long, Map<RecordKey, RopRecord>> dataStore,
+			final boolean sortedOutput) {
+		final ArrayList<RopRecord> records = new ArrayList<RopRecord>();
+		final Collection<Map<RecordKey, RopRecord>> rops = sortedOutput ? new TreeMap<Long, Map<RecordKey, RopRecord>>(
+				dataStore).values() : dataStore.values();
+		for (final Map<RecordKey, RopRecord> rop : rops) {
+			records.addAll(ropRecords(rop, sortedOutput));
+		}
+		return records.iterator();
+	}
+
+	/**
+	 * @return records of one ROP partition, ordered by epochtime and key if sortedOutput is true
+	 */
+	private static Collection<RopRecord> ropRecords(final Map<RecordKey, RopRecord> rop, final boolean sortedOutput) {
+		if (!sortedOutput) {
+			return rop.values();
+		}
+		final ArrayList<RopRecord> list = new ArrayList<RopRecord>(rop.values());
+		Collections.sort(list, new Comparator<RopRecord>() {
+			@Override
+			public int compare(final RopRecord a, final RopRecord b) {
+				final int byEpochtime = a.getEpochtime().compareTo(b.getEpochtime());
+				return (byEpochtime != 0) ? byEpochtime : a.getKey().compareTo(b.getKey());
+			}
+		});
+		return list;
+	}
 }
@@ -0,0 +1,209 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ROP time arithmetic of the parser: aligning epochtimes to the start of their ROP, and making DATETIME_ID from the
+ * datetime stamp (yyyyMMdd.HHmmss) in the filename.<br>
+ * <br>
+ * The stamp is parsed from its digits and converted with long arithmetic in the timezone of the JVM, so no Date,
+ * Calendar or formatter is created. The results are the same as with the lenient SimpleDateFormat and
+ * GregorianCalendar that were used before: a local time in a daylight saving gap is moved forward, and a local time
+ * in an overlap is taken as standard time. The formatted DATETIME_IDs are cached, because all files of a ROP get the
+ * same one. Clocks are shared by all parser threads.
+ *
+ */
+final class RopClock {
+
+	// ROP length in seconds if interface property redback.ropLength is not set
+	static final int DEFAULT_ROP_LENGTH = 900;
+
+	private static final int SECONDS_PER_DAY = 86400;
+	// The cache is cleared when it gets larger, about a week of 15 minute ROPs in a few UTC offsets
+	private static final int MAX_CACHED_IDS = 4096;
+	private static final Map<String, RopClock> CLOCKS = new ConcurrentHashMap<String, RopClock>();
+
+	private final int ropLength;
+	private final ZoneRules rules;
+	// Offset of the zone in seconds if it never changes, else null
+	private final Integer fixedOffset;
+	// Formatted DATETIME_IDs by the epoch second they show
+	private final Map<Long, String> datetimeIds = new ConcurrentHashMap<Long, String>();
+
+	/**
+	 * @param ropLength
+	 *            ROP length in seconds
+	 * @param zone
+	 *            timezone of the DATETIME_IDs and filename stamps
+	 */
+	RopClock(final int ropLength, final ZoneId zone) {
+		if (ropLength <= 0) {
+			throw new IllegalArgumentException("ROP length must be positive: " + ropLength);
+		}
+		this.ropLength = ropLength;
+		this.rules = zone.getRules();
+		this.fixedOffset = rules.isFixedOffset() ? rules.getOffset(Instant.EPOCH).getTotalSeconds() : null;
+	}
+
+	/**
+	 * @param ropLength
+	 *            ROP length in seconds (interface property redback.ropLength)
+	 * @return shared clock of the JVM timezone
+	 */
+	static RopClock of(final int ropLength) {
+		final ZoneId zone = ZoneId.systemDefault();
+		final String key = zone.getId() + "/" + ropLength;
+		RopClock clock = CLOCKS.get(key);
+		if (clock == null) {
+			clock = new RopClock(ropLength, zone);
+			CLOCKS.put(key, clock);
+		}
+		return clock;
+	}
+
+	int getRopLength() {
+		return ropLength;
+	}
+
+	/**
+	 * @return start of the ROP of epochSeconds
+	 */
+	long align(final long epochSeconds) {
+		return Math.floorDiv(epochSeconds, ropLength) * ropLength;
+	}
+
+	/**
+	 * Parses a datetime stamp yyyyMMdd.HHmmss. Like the lenient SimpleDateFormat, fields out of range roll over to
+	 * the next fields.
+	 *
+	 * @param text
+	 *            text that contains the stamp
+	 * @param from
+	 *            index of the stamp in text
+	 * @return epoch seconds of the stamp as a local time of the zone
+	 */
+	long parseStamp(final CharSequence text, final int from) {
+		final long year = digits(text, from, 4);
+		final long month = digits(text, from + 4, 2) - 1;
+		final long epochDay = epochDay(year + Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1)
+				+ digits(text, from + 6, 2) - 1;
+		final long local = epochDay * SECONDS_PER_DAY + digits(text, from + 9, 2) * 3600 + digits(text, from + 11, 2)
+				* 60 + digits(text, from + 13, 2);
+		return local - offsetOfLocal(local);
+	}
+
+	/**
+	 * @param epochSeconds
+	 *            epoch second shown by the DATETIME_ID
+	 * @return DATETIME_ID (yyyyMMddHHmmss) of epochSeconds in the zone
+	 */
+	String datetimeId(final long epochSeconds) {
+		final Long key = epochSeconds;
+		String datetimeId = datetimeIds.get(key);
+		if (datetimeId == null) {
+			datetimeId = format(epochSeconds);
+			if (datetimeIds.size() >= MAX_CACHED_IDS) {
+				datetimeIds.clear();
+			}
+			datetimeIds.put(key, datetimeId);
+		}
+		return datetimeId;
+	}
+
+	private String format(final long epochSeconds) {
+		final long local = epochSeconds + offsetOf(epochSeconds);
+		final long epochDay = Math.floorDiv(local, SECONDS_PER_DAY);
+		final long secondOfDay = Math.floorMod(local, SECONDS_PER_DAY);
+
+		// Civil date of epochDay, days counted from 0000-03-01 so that leap days are at the end of the year
+		final long days = epochDay + 719468;
+		final long era = Math.floorDiv(days, 146097);
+		final long dayOfEra = days - era * 146097;
+		final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		final long monthIndex = (5 * dayOfYear + 2) / 153;
+		final long day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+		final long month = (monthIndex < 10) ? monthIndex + 3 : monthIndex - 9;
+		final long year = yearOfEra + era * 400 + ((month <= 2) ? 1 : 0);
+
+		final StringBuilder sb = new StringBuilder(14);
+		if (year < 0) {
+			sb.append('-');
+		}
+		pad(sb, Math.abs(year), 4);
+		pad(sb, month, 2);
+		pad(sb, day, 2);
+		pad(sb, secondOfDay / 3600, 2);
+		pad(sb, secondOfDay / 60 % 60, 2);
+		pad(sb, secondOfDay % 60, 2);
+		return sb.toString();
+	}
+
+	/**
+	 * @return days from 1970-01-01 to the first day of month
+	 */
+	private static long epochDay(final long year, final long month) {
+		final long y = (month <= 2) ? year - 1 : year;
+		final long era = Math.floorDiv(y, 400);
+		final long yearOfEra = y - era * 400;
+		final long dayOfYear = (153 * ((month > 2) ? month - 3 : month + 9) + 2) / 5;
+		final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/**
+	 * @return offset of the zone in seconds at epochSeconds
+	 */
+	private int offsetOf(final long epochSeconds) {
+		if (fixedOffset != null) {
+			return fixedOffset;
+		}
+		return rules.getOffset(Instant.ofEpochSecond(epochSeconds)).getTotalSeconds();
+	}
+
+	/**
+	 * @param local
+	 *            local time of the zone as seconds from 1970-01-01T00:00
+	 * @return offset of the zone in seconds at the local time, standard time in overlaps
+	 */
+	private int offsetOfLocal(final long local) {
+		if (fixedOffset != null) {
+			return fixedOffset;
+		}
+		final LocalDateTime dateTime = LocalDateTime.ofEpochSecond(local, 0, ZoneOffset.UTC);
+		final ZoneOffsetTransition transition = rules.getTransition(dateTime);
+		if (transition != null) {
+			// Gap: the offset before the transition moves the time forward. Overlap: the later offset.
+			return transition.isGap() ? transition.getOffsetBefore().getTotalSeconds() : transition.getOffsetAfter()
+					.getTotalSeconds();
+		}
+		return rules.getOffset(dateTime).getTotalSeconds();
+	}
+
+	private static long digits(final CharSequence text, final int from, final int count) {
+		long value = 0;
+		for (int i = from; i < from + count; i++) {
+			final char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				throw new NumberFormatException("Not a digit at " + i + " in: " + text);
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static void pad(final StringBuilder sb, final long value, final int width) {
+		final String digits = Long.toString(value);
+		for (int i = digits.length(); i < width; i++) {
+			sb.append('0');
+		}
+		sb.append(digits);
+	}
+}
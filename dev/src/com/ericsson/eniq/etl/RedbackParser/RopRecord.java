@@ -0,0 +1,103 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One record of a ROP: the parsed data of all lines that have the same group key values. The record carries its key
+ * and epochtime (parsed into seconds when the line was tokenized), so it can be moved from the ROP store to the file store without building the key again.<br>
+ * <br>
+ * Values are stored by column of the CounterDictionary of the policy. A counter that is found again (for example the
+ * group keys repeated in every partial line of the record) replaces the earlier value, so each counter is kept once.
+ *
+ */
+final class RopRecord {
+
+	// Marks a counter that was found with a null value, null in values means the counter was not found
+	private static final String NULL_VALUE = new String();
+
+	private final RecordKey key;
+	private final NameValuePair epochtime;
+	private final CounterDictionary counters;
+	private String[] values;
+	private int size = 0;
+
+	/**
+	 * @param key
+	 *            key of the record
+	 * @param counters
+	 *            counter dictionary of the policy
+	 * @param list
+	 *            data of the first line of the record, with the epochtime of the record
+	 */
+	RopRecord(final RecordKey key, final CounterDictionary counters, final List<NameValuePair> list) {
+		this.key = key;
+		this.epochtime = EpochtimePair.find(list);
+		this.counters = counters;
+		this.values = new String[Math.max(counters.size(), list.size())];
+		addAll(list);
+	}
+
+	RecordKey getKey() {
+		return key;
+	}
+
+	String getEpochtime() {
+		return epochtime.m_value;
+	}
+
+	/**
+	 * @return epochtime of the record in seconds
+	 * @throws NumberFormatException
+	 *             if the epochtime is not a number
+	 */
+	long getEpochSeconds() {
+		return EpochtimePair.seconds(epochtime);
+	}
+
+	/**
+	 * Adds the data of another line of the record.
+	 */
+	void addAll(final List<NameValuePair> list) {
+		for (final NameValuePair pair : list) {
+			final int column = counters.columnOf(pair.m_name);
+			if (column >= values.length) {
+				values = Arrays.copyOf(values, Math.max(column + 1, values.length * 2));
+			}
+			if (values[column] == null) {
+				size++;
+			}
+			values[column] = (pair.m_value == null) ? NULL_VALUE : pair.m_value;
+		}
+	}
+
+	/**
+	 * @return number of counters in the record
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return upper bound of the columns used by the record
+	 */
+	int columns() {
+		return values.length;
+	}
+
+	/**
+	 * @return true if the record has a value for column
+	 */
+	boolean has(final int column) {
+		return values[column] != null;
+	}
+
+	String nameOf(final int column) {
+		return counters.nameOf(column);
+	}
+
+	String valueOf(final int column) {
+		final String value = values[column];
+		return (value == NULL_VALUE) ? null : value;
+	}
+}
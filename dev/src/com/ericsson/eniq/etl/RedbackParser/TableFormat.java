@@ -0,0 +1,146 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled format of a table format policy (PM_policy_asp*, PM_policy_ppa): the column names of the table and the
+ * pattern of its rows, with one group per column.<br>
+ * <br>
+ * The columns and the row pattern are given by interface properties redback.tableFormat.&lt;tag_id&gt; and
+ * redback.tableFormatRegExp.&lt;tag_id&gt;, so a new table format policy only needs interface properties. Built in
+ * defaults are used for the known policies when the properties are not set.<br>
+ * <br>
+ * Formats are immutable and cached by tag_id and property values, so the columns are split, the row pattern is
+ * compiled and the number of its groups is checked against the columns only for the first file of each policy and
+ * interface. A changed property value gets a new format.
+ * Each parse context matches the rows with its own Matcher, which is reset for every line.
+ *
+ */
+final class TableFormat {
+
+	private static final Map<String, TableFormat> CACHE = new ConcurrentHashMap<String, TableFormat>();
+
+	private static final String CPU_ROW = "([0-9]+)/([0-9]+): ([0-9]+\\.[0-9]+)% ([0-9]+\\.[0-9]+)% ([0-9]+\\.[0-9]+)%";
+	private static final String LOAD_ROW = "([0-9]+)/([0-9]+): ([0-9]+\\.[0-9]+) ([0-9]+\\.[0-9]+) ([0-9]+\\.[0-9]+)";
+	private static final String MEM_ROW = "([0-9]+)/([0-9]+): ([0-9]+) ([0-9]+)";
+	private static final String PPA_ROW = "([0-9]+)/((?i)[EI]PPA): ([0-9]+\\.[0-9]+)% ([0-9]+\\.[0-9]+)% ([0-9]+\\.[0-9]+)%";
+
+	private final String[] columns;
+	private final Pattern rowPattern;
+	// Rows can only be stored if the row pattern has one group per column
+	private final boolean columnsMatch;
+
+	private TableFormat(final String[] columns, final Pattern rowPattern) {
+		this.columns = columns;
+		this.rowPattern = rowPattern;
+		this.columnsMatch = rowPattern.matcher("").groupCount() == columns.length;
+	}
+
+	/**
+	 * @param tagId
+	 *            tag_id of the file
+	 * @param tableFormat
+	 *            value of interface property redback.tableFormat.&lt;tag_id&gt; (column names of the table in source
+	 *            file) or null if it is not set
+	 * @param tableFormatRegExp
+	 *            value of interface property redback.tableFormatRegExp.&lt;tag_id&gt; (pattern of a row, one group per
+	 *            column) or null if it is not set
+	 * @param filename
+	 *            name of the file, for the log
+	 * @return cached format of the policy, compiled if not found
+	 * @throws Exception
+	 *             if tableFormat is not set and the policy has no default columns, or if tableFormatRegExp is not a
+	 *             valid pattern
+	 */
+	static TableFormat of(final String tagId, final String tableFormat, final String tableFormatRegExp,
+			final String filename, final Logger log) throws Exception {
+		final String key = tagId + '\n' + tableFormat + '\n' + tableFormatRegExp;
+		TableFormat format = CACHE.get(key);
+		if (format == null) {
+			format = compile(tagId, tableFormat, tableFormatRegExp, filename, log);
+			CACHE.put(key, format);
+		}
+		return format;
+	}
+
+	private static TableFormat compile(final String tagId, final String tableFormat, final String tableFormatRegExp,
+			final String filename, final Logger log) throws Exception {
+		// Get list of column names of the table in source file
+		String tableCols = tableFormat;
+		if (null == tableCols) {
+			log.warning("Interface property redback.tableFormat." + tagId + " not found while parsing file " + filename
+					+ "" + "\n - can't get column names of table in file");
+			// Default list to be used! This is not ideal - should be provided by interface property!
+			if (tagId.equalsIgnoreCase("PM_policy_aspcpu")) {
+				tableCols = "Slot,Asp,CpuUsageFiveSecondAvg,CpuUsageOneMinuteAvg,CpuUsageFiveMinuteAvg";
+			} else if (tagId.equalsIgnoreCase("PM_policy_aspload")) {
+				tableCols = "Slot,Asp,LoadAvgOneMinute,LoadAvgFiveMinute,LoadAvgFifteenMinute";
+			} else if (tagId.equalsIgnoreCase("PM_policy_aspmem")) {
+				tableCols = "Slot,Asp,TotalMemoryKBytes,FreeMemoryKBytes";
+			} else if (tagId.equalsIgnoreCase("PM_policy_ppa")) {
+				tableCols = "Slot,PPA,CpuUsageFiveSecondAvg,CpuUsageOneMinuteAvg,CpuUsageFiveMinuteAvg";
+			} else if (tagId.equalsIgnoreCase("PM_policy_aspepscpu")) {
+				tableCols = "Slot,Asp,CpuUsageFiveSecondAvg,CpuUsageOneMinuteAvg,CpuUsageFiveMinuteAvg";
+			} else {
+				log.severe("Table column names not available. Cannot process file.");
+				throw new Exception("Table column names not available.");
+			}
+			log.warning("Using default (hardcoded) table columns instead: " + tableCols);
+		}
+
+		String formatRegExp = tableFormatRegExp;
+		if (null == formatRegExp) {
+			if (tagId.equalsIgnoreCase("PM_policy_aspload")) {
+				formatRegExp = LOAD_ROW;
+			} else if (tagId.equalsIgnoreCase("PM_policy_aspmem")) {
+				formatRegExp = MEM_ROW;
+			} else if (tagId.equalsIgnoreCase("PM_policy_ppa")) {
+				formatRegExp = PPA_ROW;
+			} else {
+				formatRegExp = CPU_ROW;
+			}
+			log.fine("Using default (hardcoded) setting: " + formatRegExp);
+		} else {
+			log.fine("Using row format of interface property redback.tableFormatRegExp." + tagId + ": "
+					+ formatRegExp);
+		}
+
+		final TableFormat format = new TableFormat(tableCols.split(","), Pattern.compile(formatRegExp));
+		if (!format.columnsMatch) {
+			log.warning("The number of columns in the row format of " + tagId + " does not match the "
+					+ format.columns.length + " columns " + tableCols + ", rows of the table can not be stored.");
+		}
+		return format;
+	}
+
+	int columnCount() {
+		return columns.length;
+	}
+
+	String column(final int index) {
+		return columns[index];
+	}
+
+	/**
+	 * @return true if the row pattern has one group per column
+	 */
+	boolean columnsMatch() {
+		return columnsMatch;
+	}
+
+	/**
+	 * @param matcher
+	 *            matcher of an earlier file or null
+	 * @return matcher of the rows of this format, matcher if it already is one
+	 */
+	Matcher matcher(final Matcher matcher) {
+		if (matcher != null && matcher.pattern() == rowPattern) {
+			return matcher;
+		}
+		return rowPattern.matcher("");
+	}
+}
@@ -0,0 +1,74 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class LineScannerTest {
+
+  @Test
+  public void testReadLines() throws Exception {
+    LineScanner scanner = new LineScanner(16);
+    scanner.reset(new StringReader("header\nepochtime:1;a:1;\nepochtime:2;b:2;\n"));
+
+    assertEquals("header", scanner.readLine("\n", 1));
+    assertEquals("epochtime:1;a:1;", scanner.readLine("\n", 1));
+    assertEquals("epochtime:2;b:2;", scanner.readLine("\n", 1));
+    assertNull(scanner.readLine("\n", 1));
+  }
+
+  /*
+   * Lines longer than the buffer make the buffer grow, they are not cut.
+   */
+  @Test
+  public void testLineLongerThanBuffer() throws Exception {
+    StringBuilder longLine = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      longLine.append("counter").append(i).append(':').append(i).append(';');
+    }
+    LineScanner scanner = new LineScanner(8);
+    scanner.reset(new StringReader("a\n" + longLine + "\nb\n"));
+
+    assertEquals("a", scanner.readLine("\n", 1));
+    assertEquals(longLine.toString(), scanner.readLine("\n", 1));
+    assertEquals("b", scanner.readLine("\n", 1));
+    assertNull(scanner.readLine("\n", 1));
+  }
+
+  /*
+   * Text after the last row delimiter is not returned, same as the old block split implementation.
+   */
+  @Test
+  public void testUnterminatedLastLine() throws Exception {
+    LineScanner scanner = new LineScanner(4);
+    scanner.reset(new StringReader("line1\n\nline3"));
+
+    assertEquals("line1", scanner.readLine("\n", 1));
+    assertEquals("", scanner.readLine("\n", 1));
+    assertNull(scanner.readLine("\n", 1));
+  }
+
+  @Test
+  public void testDelimiterSplitBetweenBlocks() throws Exception {
+    LineScanner scanner = new LineScanner(4);
+    scanner.reset(new StringReader("abc\r\ndefgh\r\n"));
+
+    assertEquals("abc", scanner.readLine("\r\n", 2));
+    assertEquals("defgh", scanner.readLine("\r\n", 2));
+    assertNull(scanner.readLine("\r\n", 2));
+  }
+
+  @Test
+  public void testResetReusesScanner() throws Exception {
+    LineScanner scanner = new LineScanner(4);
+    scanner.reset(new StringReader("first file\nrest"));
+    assertEquals("first file", scanner.readLine("\n", 1));
+
+    scanner.reset(new StringReader("second file\n"));
+    assertEquals("second file", scanner.readLine("\n", 1));
+    assertNull(scanner.readLine("\n", 1));
+  }
+}
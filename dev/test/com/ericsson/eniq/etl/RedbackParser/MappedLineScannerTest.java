@@ -0,0 +1,98 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+public class MappedLineScannerTest {
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  @Test
+  public void testReadLines() throws Exception {
+    MappedLineScanner scanner = new MappedLineScanner();
+    scanner.reset(ByteBuffer.wrap("header\nepochtime:1;a:1;\n\nlast".getBytes(ASCII)), ASCII);
+
+    assertEquals("header", scanner.readLine("\n", 1));
+    CharSequence view = scanner.readLineView("\n", 1);
+    assertEquals(16, view.length());
+    assertEquals('e', view.charAt(0));
+    assertEquals("a:1", view.subSequence(12, 15).toString());
+    assertEquals("epochtime:1;a:1;", view.toString());
+    assertEquals("", scanner.readLine("\n", 1));
+    // Text after the last delimiter is not a line
+    assertNull(scanner.readLine("\n", 1));
+  }
+
+  /*
+   * Chunks end at line boundaries, and before a line with lineStart if it is given.
+   */
+  @Test
+  public void testNextChunk() throws Exception {
+    String data = "epochtime:1;a:1;\nepochtime:2;c:1;\nclass:1\nepochtime:3;a:2;\n";
+    MappedLineScanner scanner = new MappedLineScanner();
+    scanner.reset(ByteBuffer.wrap(data.getBytes(ASCII)), ASCII);
+
+    MappedLineScanner chunk = scanner.nextChunk(20, "\n", null);
+    assertEquals("epochtime:1;a:1;", chunk.readLine("\n", 1));
+    assertEquals("epochtime:2;c:1;", chunk.readLine("\n", 1));
+    assertNull(chunk.readLine("\n", 1));
+
+    chunk = scanner.nextChunk(1, "\n", "epochtime");
+    assertEquals("class:1", chunk.readLine("\n", 1));
+    assertNull(chunk.readLine("\n", 1));
+
+    chunk = scanner.nextChunk(1000, "\n", "epochtime");
+    assertEquals("epochtime:3;a:2;", chunk.readLine("\n", 1));
+    assertNull(chunk.readLine("\n", 1));
+    assertNull(scanner.nextChunk(1000, "\n", null));
+  }
+
+  /*
+   * Tokenizing the view over the mapped bytes gives the same pairs as tokenizing the decoded line.
+   */
+  @Test
+  public void testTokenizeMappedFile() throws Exception {
+    File file = new File(System.getProperty("user.home"), "mappedInputFile");
+    FileOutputStream out = new FileOutputStream(file);
+    out.write("PM_policy_port\nepochtime:1250436302;slot:1;port:2;rx_bytes:5000 6000;tx_pkts:(N/A);\n".getBytes(ASCII));
+    out.close();
+
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      MappedLineScanner scanner = new MappedLineScanner();
+      scanner.reset(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()), ASCII);
+      assertEquals("PM_policy_port", scanner.readLine("\n", 1));
+
+      RecordTokenizer tokenizer = new RecordTokenizer(';', ':', Logger.getLogger("test"));
+      ArrayList<NameValuePair> list = new ArrayList<NameValuePair>();
+      tokenizer.tokenize(scanner.readLineView("\n", 1), list);
+
+      String[] expected = { "epochtime=1250436302", "slot=1", "port=2", "rx_bytes=5000", "rx_bytes_agg=6000",
+          "tx_pkts=(N/A)" };
+      assertEquals(expected.length, list.size());
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i], list.get(i).m_name + "=" + list.get(i).m_value);
+      }
+      assertNull(scanner.readLineView("\n", 1));
+    } finally {
+      raf.close();
+    }
+  }
+
+  @AfterClass
+  public static void clean() {
+    new File(System.getProperty("user.home"), "mappedInputFile").delete();
+  }
+}
@@ -0,0 +1,59 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+
+import org.junit.Test;
+
+import com.ericsson.eniq.etl.RedbackParser.FileMetrics.Phase;
+
+public class MetricsRegistryTest {
+
+  private final Logger log = Logger.getLogger("MetricsRegistryTest");
+
+  /*
+   * The time between two phase moves is added to the phase that is left.
+   */
+  @Test
+  public void testPhases() throws Exception {
+    FileMetrics metrics = new FileMetrics();
+    metrics.start("file", 1000);
+    assertEquals(Phase.READ, metrics.enter(Phase.MERGE));
+    Thread.sleep(5);
+    assertEquals(Phase.MERGE, metrics.enter(Phase.READ));
+    metrics.finish();
+
+    assertTrue(metrics.getPhaseNanos(Phase.MERGE) >= 5000000);
+    assertEquals(0, metrics.getPhaseNanos(Phase.EMIT));
+    assertEquals(metrics.getTotalNanos(), metrics.getPhaseNanos(Phase.READ) + metrics.getPhaseNanos(Phase.MERGE));
+  }
+
+  /*
+   * File metrics are summed by policy and shown in JMX.
+   */
+  @Test
+  public void testPolicyMetricsInJmx() throws Exception {
+    for (int i = 0; i < 2; i++) {
+      FileMetrics metrics = new FileMetrics();
+      metrics.start("file" + i, 1000);
+      metrics.policy = "PM_policy_test";
+      metrics.rows = 10;
+      metrics.extraRops = 1;
+      metrics.failed = (i == 1);
+      metrics.finish();
+      MetricsRegistry.record(metrics, log);
+    }
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertEquals(2L, server.getAttribute(MetricsRegistry.objectName("PM_policy_test"), "Files"));
+    assertEquals(1L, server.getAttribute(MetricsRegistry.objectName("PM_policy_test"), "FailedFiles"));
+    assertEquals(20L, server.getAttribute(MetricsRegistry.objectName("PM_policy_test"), "Rows"));
+    assertEquals(2L, server.getAttribute(MetricsRegistry.objectName("PM_policy_test"), "ExtraRops"));
+    assertEquals("file1", server.getAttribute(MetricsRegistry.objectName("PM_policy_test"), "LastFilename"));
+  }
+}
@@ -0,0 +1,85 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+
+public class RecordEmitterTest {
+
+  private final CounterDictionary counters = new CounterDictionary();
+
+  private RopRecord record(String slot, String value) {
+    List<NameValuePair> list = new ArrayList<NameValuePair>();
+    list.add(new EpochtimePair("epochtime", "1250436302"));
+    list.add(new NameValuePair("slot", slot));
+    list.add(new NameValuePair("rx_pkts", value));
+    return new RopRecord(new RecordKey(new String[] { null, slot }), counters, list);
+  }
+
+  private static MeasurementFile batchFile(TestParserHost host) throws Exception {
+    host.batch = true;
+    return host.createMeasurementFile(new TestParserHost.TestFile("file", "", new Properties()), "tag", "tp", "st",
+        "sn", "wn", null);
+  }
+
+  /*
+   * Batches are saved when full and by flush, the file level columns are set once and (N/A) is written as null.
+   */
+  @Test
+  public void testBatches() throws Exception {
+    TestParserHost host = new TestParserHost();
+    FileMetrics metrics = new FileMetrics();
+    RecordEmitter emitter = new RecordEmitter(batchFile(host), new FileHeader("20090816153000", "file", "/dir",
+        "+0000", "tag"), metrics, HotPathLog.OFF, 2);
+    for (int slot = 1; slot <= 5; slot++) {
+      emitter.emit(record(String.valueOf(slot), (slot == 3) ? "(N/A)" : "10" + slot));
+    }
+    TestParserHost.Session session = host.sessions.get(0);
+    assertEquals(4, session.rows.size());
+    emitter.flush();
+    emitter.flush();
+
+    assertEquals(5, session.rows.size());
+    assertEquals(3, session.saveRowsCalls);
+    assertEquals(1, session.constantDataCalls);
+    assertEquals(5, metrics.rows);
+    assertEquals(15, metrics.counters);
+    for (Map<String, String> row : session.rows) {
+      assertEquals("20090816153000", row.get("DATETIME_ID"));
+      assertEquals("/dir", row.get("DIRNAME"));
+      if (row.get("slot").equals("3")) {
+        assertNull(row.get("rx_pkts"));
+      } else {
+        assertEquals("10" + row.get("slot"), row.get("rx_pkts"));
+      }
+    }
+  }
+
+  /*
+   * Without a header no rows are saved and no counters are counted, with batches or counter by counter.
+   */
+  @Test
+  public void testNoHeader() throws Exception {
+    for (int batchSize : new int[] { 2, 0 }) {
+      TestParserHost host = new TestParserHost();
+      FileMetrics metrics = new FileMetrics();
+      RecordEmitter emitter = new RecordEmitter(batchFile(host), null, metrics, HotPathLog.OFF, batchSize);
+      for (int slot = 1; slot <= 3; slot++) {
+        emitter.emit(record(String.valueOf(slot), "1"));
+      }
+      emitter.flush();
+
+      assertEquals(0, host.sessions.get(0).rows.size());
+      assertEquals(0, metrics.rows);
+      assertEquals(0, metrics.counters);
+    }
+  }
+}
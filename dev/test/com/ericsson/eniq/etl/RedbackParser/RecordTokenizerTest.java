@@ -0,0 +1,79 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+public class RecordTokenizerTest {
+
+  private final RecordTokenizer tokenizer = new RecordTokenizer(';', ':', Logger.getLogger("RecordTokenizerTest"));
+
+  @Test
+  public void testTokenizeLine() throws Exception {
+    ArrayList<NameValuePair> list = new ArrayList<NameValuePair>();
+    tokenizer.tokenize("abc:epochtime:1250436302;slot:1; rx_pkts : 10 20 ;state:(N/A);;", list);
+
+    assertEquals(5, list.size());
+    assertPair("epochtime", "1250436302", list.get(0));
+    assertPair("slot", "1", list.get(1));
+    assertPair("rx_pkts", "10", list.get(2));
+    assertPair("rx_pkts_agg", "20", list.get(3));
+    assertPair("state", "(N/A)", list.get(4));
+  }
+
+  /*
+   * Epochtime is parsed into seconds when the line is tokenized, also after 2038.
+   */
+  @Test
+  public void testEpochtimeSeconds() throws Exception {
+    ArrayList<NameValuePair> list = new ArrayList<NameValuePair>();
+    tokenizer.tokenize("slot:1;epochtime:4102444800;port:2;", list);
+
+    assertPair("epochtime", "4102444800", list.get(1));
+    assertEquals(4102444800L, EpochtimePair.seconds(EpochtimePair.find(list)));
+    assertEquals(1L, EpochtimePair.seconds(new NameValuePair("epochtime", "1")));
+  }
+
+  /*
+   * A field without field delimiter stops the line, the fields before it are kept.
+   */
+  @Test
+  public void testFieldWithoutDelimiter() {
+    ArrayList<NameValuePair> list = new ArrayList<NameValuePair>();
+    try {
+      tokenizer.tokenize("epochtime:1;slot:1;bad;port:2;", list);
+      fail("An exception was expected but there was no exception thrown");
+    } catch (Exception e) {
+      assertEquals(2, list.size());
+    }
+  }
+
+  /*
+   * Class counter fields are given to the handler when they are found, and the rest of the line is tokenized after it.
+   */
+  @Test
+  public void testClassCounterHandler() throws Exception {
+    final ArrayList<String> handled = new ArrayList<String>();
+    ArrayList<NameValuePair> list = new ArrayList<NameValuePair>();
+    tokenizer.tokenize("epochtime:1;metering_class_counters:;port:2;", list, new RecordTokenizer.ClassCounterHandler() {
+      public String classField(String field) {
+        handled.add(field);
+        return field;
+      }
+    });
+
+    assertEquals(1, handled.size());
+    assertEquals("metering_class_counters:", handled.get(0));
+    assertEquals(2, list.size());
+    assertPair("port", "2", list.get(1));
+  }
+
+  private static void assertPair(String name, String value, NameValuePair pair) {
+    assertEquals(name, pair.m_name);
+    assertEquals(value, pair.m_value);
+  }
+}
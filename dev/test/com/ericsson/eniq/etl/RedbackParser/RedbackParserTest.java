@@ -3,16 +3,26 @@ package com.ericsson.eniq.etl.RedbackParser;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.TreeMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -26,8 +36,6 @@ public class RedbackParserTest {
   private static Method checkGroupKeysMethod; 
   private static Method setGroupKeysMethod;
   
-  private static Field block;  
-  
   // init
   private static Field mainParserObject;
 
@@ -52,18 +60,17 @@ public class RedbackParserTest {
   @BeforeClass
   public static void init() {
     try {
-      readLineMethod = RedbackParser.class.getDeclaredMethod("readLine", String.class, BufferedReader.class, int.class);
-      storeRowMethod = RedbackParser.class.getDeclaredMethod("storeRow", ArrayList.class);
+      readLineMethod = RedbackParser.class.getDeclaredMethod("readLine", String.class, LineSource.class, int.class);
+      storeRowMethod = RedbackParser.class.getDeclaredMethod("storeRow", ParseContext.class, ArrayList.class);
 //      getRowCount = RedbackParser.class.getDeclaredMethod("getRowCount", null);
-      checkGroupKeysMethod = RedbackParser.class.getDeclaredMethod("checkGroupKeys", ArrayList.class);
-      readLineMethod = RedbackParser.class.getDeclaredMethod("readLine", String.class, BufferedReader.class, int.class);
-      setGroupKeysMethod = RedbackParser.class.getDeclaredMethod("setGroupKeys", String.class);
+      checkGroupKeysMethod = RedbackParser.class.getDeclaredMethod("checkGroupKeys", ParseContext.class, ArrayList.class);
+      readLineMethod = RedbackParser.class.getDeclaredMethod("readLine", String.class, LineSource.class, int.class);
+      setGroupKeysMethod = RedbackParser.class.getDeclaredMethod("setGroupKeys", ParseContext.class, String.class);
       
-      m_dataStoreMap = RedbackParser.class.getDeclaredField("m_dataStoreMap");
-      rop_dataStoreMapField = RedbackParser.class.getDeclaredField("rop_dataStoreMap");
+      m_dataStoreMap = ParseContext.class.getDeclaredField("m_dataStoreMap");
+      rop_dataStoreMapField = ParseContext.class.getDeclaredField("rop_dataStoreMap");
  //     m_dataStorePolicy = RedbackParser.class.getDeclaredField("m_dataStorePolicy");
-      block = RedbackParser.class.getDeclaredField("block");
-      groupKeysField = RedbackParser.class.getDeclaredField("groupKeys");
+      groupKeysField = ParseContext.class.getDeclaredField("groupKeys");
       CHANNEL_POLICY_KEYSField = RedbackParser.class.getDeclaredField("CHANNEL_POLICY_KEYS");
       GLOBAL_POLICY_KEYSField = RedbackParser.class.getDeclaredField("GLOBAL_POLICY_KEYS");
       EPS_APN_POLICY_KEYSField = RedbackParser.class.getDeclaredField("EPS_APN_POLICY_KEYS");
@@ -76,7 +83,6 @@ public class RedbackParserTest {
       workerName = RedbackParser.class.getDeclaredField("workerName");
 
       readLineMethod.setAccessible(true);
-      block.setAccessible(true);
       storeRowMethod.setAccessible(true);
       checkGroupKeysMethod.setAccessible(true);
       setGroupKeysMethod.setAccessible(true);
@@ -154,20 +160,32 @@ public class RedbackParserTest {
     
     assertEquals(expectedResult, result);
   }
+
+  /*
+   * Small files are read with one block of the file size, large files with blocks of the configured size.
+   */
+  @Test
+  public void testReadBufferSize() {
+    assertEquals(301, RedbackParser.readBufferSize(300, 262144));
+    assertEquals(262144, RedbackParser.readBufferSize(100000000L, 262144));
+    assertEquals(8192, RedbackParser.readBufferSize(0, 262144));
+    assertEquals(1024, RedbackParser.readBufferSize(0, 1024));
+  }
   
   @Test 
   public void testStorageOfFirstRow(){
 	  RedbackParser ap = new RedbackParser();
+	  ParseContext ctx = new ParseContext(100);
 	  try {
-		  groupKeysField.set(ap, RedbackParserTest.EPS_APN_POLICY_KEYSField.get(ap));
+		  setGroupKeysMethod.invoke(ap, ctx, "PM_policy_eps_apn");
 		  ArrayList<NameValuePair> list = new ArrayList<NameValuePair>();
-		  list.add(new NameValuePair("key1", "123456"));
-		  list.add(new NameValuePair("key2", "value2"));
+		  list.add(new NameValuePair("epochtime", "123456"));
+		  list.add(new NameValuePair("SgiApnIndex", "value2"));
 		  list.add(new NameValuePair("other1", "value3"));
 		  list.add(new NameValuePair("other2", "value4"));
-		  storeRowMethod.invoke(ap, list);
+		  storeRowMethod.invoke(ap, ctx, list);
 		  @SuppressWarnings("unchecked")
-		TreeMap<String,ArrayList<NameValuePair>> map = (TreeMap<String,ArrayList<NameValuePair>>)rop_dataStoreMapField.get(ap);
+		Map<RecordKey,RopRecord> map = (Map<RecordKey,RopRecord>)rop_dataStoreMapField.get(ctx);
 		  assertEquals(1, map.size());
 	  } catch (IllegalArgumentException e) {
 		  fail(e.getMessage());
@@ -181,30 +199,31 @@ public class RedbackParserTest {
   @Test 
   public void testStorageOfSecondRowWithSameKey(){
 	  RedbackParser ap = new RedbackParser();
+	  ParseContext ctx = new ParseContext(100);
 	  try {
 		  //Set the policy (it determines how may group keys there are)
-		  groupKeysField.set(ap, RedbackParserTest.EPS_APN_POLICY_KEYSField.get(ap));
+		  setGroupKeysMethod.invoke(ap, ctx, "PM_policy_eps_apn");
 		  //Make some dummy data that represent 2 lines parsed from file: list1 and list 2. 
 		  ArrayList<NameValuePair> list1 = new ArrayList<NameValuePair>();
-		  list1.add(new NameValuePair("key1", "123456"));
-		  list1.add(new NameValuePair("key2", "value2"));
+		  list1.add(new NameValuePair("epochtime", "123456"));
+		  list1.add(new NameValuePair("SgiApnIndex", "value2"));
 		  list1.add(new NameValuePair("other1", "value3"));
 		  list1.add(new NameValuePair("other2", "value4"));
 		  ArrayList<NameValuePair> list2 = new ArrayList<NameValuePair>();
-		  list2.add(new NameValuePair("key1", "123456"));
-		  list2.add(new NameValuePair("key2", "value2"));
+		  list2.add(new NameValuePair("epochtime", "123456"));
+		  list2.add(new NameValuePair("SgiApnIndex", "value2"));
 		  list2.add(new NameValuePair("other3", "value5"));
 		  list2.add(new NameValuePair("other4", "value6"));
 		  //Store both sets of data in rop_dataStoreMap
-		  storeRowMethod.invoke(ap, list1);
-		  storeRowMethod.invoke(ap, list2);
+		  storeRowMethod.invoke(ap, ctx, list1);
+		  storeRowMethod.invoke(ap, ctx, list2);
 		  //Get rop_dataStoreMap
 		  @SuppressWarnings("unchecked")
-		TreeMap<String,ArrayList<NameValuePair>> map = (TreeMap<String,ArrayList<NameValuePair>>)rop_dataStoreMapField.get(ap);
+		Map<RecordKey,RopRecord> map = (Map<RecordKey,RopRecord>)rop_dataStoreMapField.get(ctx);
 		  //Check that the 2 sets of data have been added to the same entry (record) in rop_dataStoreMap.
+		  //The epochtime and group key found in both lines are stored once.
 		  assertEquals(1, map.size());
-		  System.out.println(map);
-		  assertEquals(6, map.get("key2value2").size());
+		  assertEquals(6, map.get(new RecordKey(new String[] { null, "value2" })).size());
 	  } catch (IllegalArgumentException e) {
 		  fail(e.getMessage());
 	  } catch (IllegalAccessException e) {
@@ -214,33 +233,384 @@ public class RedbackParserTest {
 	}
   }
   
+  /*
+   * Lines are stored to the partition of the ROP of their epochtime, also when the lines of two ROPs are mixed.
+   */
+  @Test
+  public void testStorageByRop() throws Exception {
+    RedbackParser ap = new RedbackParser();
+    ap.init(null, "tp", "st", "sn", "wn");
+    ParseContext ctx = new ParseContext(100);
+    ctx.ropClock = new RopClock(300, java.time.ZoneId.of("UTC"));
+    setGroupKeysMethod.invoke(ap, ctx, "PM_policy_eps_apn");
+    String[][] lines = { { "1000", "c1" }, { "1250", "c2" }, { "1010", "c3" }, { "1299", "c4" } };
+    for (String[] line : lines) {
+      ArrayList<NameValuePair> list = new ArrayList<NameValuePair>();
+      list.add(new NameValuePair("epochtime", line[0]));
+      list.add(new NameValuePair("SgiApnIndex", "apn1"));
+      list.add(new NameValuePair(line[1], "1"));
+      storeRowMethod.invoke(ap, ctx, list);
+    }
+
+    assertEquals(2, ctx.ropPartitions.size());
+    RecordKey key = new RecordKey(new String[] { null, "apn1" });
+    RopRecord first = ctx.ropPartitions.get(900L).get(key);
+    assertEquals("1000", first.getEpochtime());
+    assertEquals(4, first.size());
+    assertEquals(4, ctx.ropPartitions.get(1200L).get(key).size());
+    assertEquals(1, ctx.metrics.getExtraRops());
+
+    // Completed ROPs are kept as partitions of their own, the records are not copied
+    Method flushRop = RedbackParser.class.getDeclaredMethod("flushRop", ParseContext.class);
+    flushRop.setAccessible(true);
+    flushRop.invoke(ap, ctx);
+    assertEquals(0, ctx.ropPartitions.size());
+    assertEquals(2, ctx.m_dataStoreMap.size());
+    assertSame(first, ctx.m_dataStoreMap.get(900L).get(key));
+    assertEquals(1, ctx.m_dataStoreMap.get(1200L).size());
+  }
+
+  /*
+   * In a worker pool the host callbacks of each file are called in order, also for a file that fails.
+   */
+  @Test
+  public void testPoolCallbackOrder() {
+    Properties properties = portProperties();
+    properties.setProperty("redback.workerPoolSize", "3");
+    TestParserHost host = new TestParserHost();
+    host.failingFile = "n3_";
+    for (int i = 1; i <= 6; i++) {
+      host.add("n" + i + "_PM_policy_port_20090816.153000+0000.log", PORT_ROPS, properties);
+    }
+    RedbackParser parser = TestParserHost.parser(host);
+    parser.run();
+
+    assertEquals(3, parser.status());
+    assertEquals(18, host.callbacks.size());
+    for (int i = 1; i <= 6; i++) {
+      String name = "n" + i + "_PM_policy_port_20090816.153000+0000.log";
+      List<String> calls = new ArrayList<String>();
+      for (String call : host.callbacks) {
+        if (call.endsWith(" " + name)) {
+          calls.add(call.substring(0, call.indexOf(' ')));
+        }
+      }
+      assertEquals(name, Arrays.asList("pre", (i == 3) ? "error" : "post", "finally"), calls);
+    }
+    assertEquals(5 * 5, host.rows().size());
+  }
+
+  /*
+   * In streaming mode a line of a ROP that has been written already is skipped with a warning, it is not a new ROP
+   * and no second row is written for its record.
+   */
+  @Test
+  public void testStreamingLateLine() throws Exception {
+    RedbackParser ap = new RedbackParser();
+    ap.init(null, "tp", "st", "sn", "late");
+    final List<LogRecord> warnings = new ArrayList<LogRecord>();
+    Handler handler = new Handler() {
+      @Override
+      public void publish(LogRecord record) {
+        if (record.getLevel() == Level.WARNING) {
+          warnings.add(record);
+        }
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    Logger log = Logger.getLogger("etl.tp.st.sn.parser.Redback.late");
+    log.addHandler(handler);
+    try {
+      ParseContext ctx = new ParseContext(100);
+      ctx.ropClock = new RopClock(300, java.time.ZoneId.of("UTC"));
+      ctx.streamingOutput = true;
+      TestParserHost host = new TestParserHost();
+      ctx.emitter = new RecordEmitter(host.createMeasurementFile(new TestParserHost.TestFile("file", "",
+          new Properties()), "tag", "tp", "st", "sn", "wn", null), new FileHeader("20090816153000", "file", "/dir",
+          "+0000", "tag"), ctx.metrics, HotPathLog.OFF, 0);
+      setGroupKeysMethod.invoke(ap, ctx, "PM_policy_eps_apn");
+      String[][] lines = { { "1000", "c1" }, { "1300", "c2" }, { "1600", "c3" }, { "1010", "c4" } };
+      for (String[] line : lines) {
+        ArrayList<NameValuePair> list = new ArrayList<NameValuePair>();
+        list.add(new NameValuePair("epochtime", line[0]));
+        list.add(new NameValuePair("SgiApnIndex", "apn1"));
+        list.add(new NameValuePair(line[1], "1"));
+        storeRowMethod.invoke(ap, ctx, list);
+      }
+      Method flushRop = RedbackParser.class.getDeclaredMethod("flushRop", ParseContext.class);
+      flushRop.setAccessible(true);
+      flushRop.invoke(ap, ctx);
+
+      assertEquals(2, ctx.metrics.getExtraRops());
+      assertEquals(1, ctx.metrics.skippedLines);
+      assertEquals(1, warnings.size());
+      List<Map<String, String>> rows = host.sessions.get(0).rows;
+      assertEquals(3, rows.size());
+      assertEquals("1", rows.get(0).get("c1"));
+      assertFalse(rows.get(0).containsKey("c4"));
+    } finally {
+      log.removeHandler(handler);
+    }
+  }
+
+  /*
+   * With emit threads each later ROP of a file is written to a session of its own, with the same file level columns,
+   * and all rows are written as without emit threads. The session names are unique also when files are parsed in
+   * parallel.
+   */
+  @Test
+  public void testEmitThreads() {
+    Properties properties = portProperties();
+    TestParserHost serial = new TestParserHost();
+    TestParserHost host = new TestParserHost();
+    for (int i = 1; i <= 2; i++) {
+      serial.add("n" + i + "_PM_policy_port_20090816.153000+0000.log", PORT_ROPS, properties);
+    }
+    TestParserHost.parser(serial).run();
+    Properties parallel = portProperties();
+    parallel.setProperty("redback.emitThreads", "2");
+    parallel.setProperty("redback.workerPoolSize", "2");
+    for (int i = 1; i <= 2; i++) {
+      host.add("n" + i + "_PM_policy_port_20090816.153000+0000.log", PORT_ROPS, parallel);
+    }
+    TestParserHost.parser(host).run();
+
+    assertEquals(serial.rows(), host.rows());
+    assertEquals(8, host.sessions.size());
+    Map<String, Map<String, String>> firstRows = new HashMap<String, Map<String, String>>();
+    Set<String> ropSessions = new HashSet<String>();
+    for (TestParserHost.Session session : host.sessions) {
+      assertTrue(session.workerName, session.closed);
+      if (session.workerName.equals("wn")) {
+        firstRows.put(session.fileName, session.rows.get(0));
+      } else {
+        assertTrue(session.workerName, session.workerName.matches("wn_[12]_rop[1-3]"));
+        assertTrue(session.workerName, ropSessions.add(session.workerName));
+        assertEquals(1, session.rows.size());
+      }
+    }
+    assertEquals(2, firstRows.size());
+    for (TestParserHost.Session session : host.sessions) {
+      Map<String, String> first = firstRows.get(session.fileName);
+      assertEquals(session.fileName, first.get("filename"));
+      for (String column : new String[] { "DATETIME_ID", "filename", "DC_SUSPECTFLAG", "DIRNAME", "JVM_TIMEZONE",
+          "vendorID" }) {
+        assertEquals(column, first.get(column), session.rows.get(0).get(column));
+      }
+    }
+  }
+
+  /*
+   * A session of an emit thread that is not open or fails makes the file fail, and every session is closed.
+   */
+  @Test
+  public void testEmitThreadsFailure() {
+    Properties properties = portProperties();
+    properties.setProperty("redback.emitThreads", "2");
+    PolicyMetrics policy = MetricsRegistry.policy("PM_policy_port", Logger.getLogger("RedbackParserTest"));
+    for (int i = 0; i < 2; i++) {
+      long failed = policy.getFailedFiles();
+      TestParserHost host = new TestParserHost().add("n1_PM_policy_port_20090816.153000+0000.log", PORT_ROPS,
+          properties);
+      if (i == 0) {
+        host.closedWorkerSuffix = "_rop2";
+      } else {
+        host.failingWorkerSuffix = "_rop2";
+      }
+      TestParserHost.parser(host).run();
+
+      assertEquals(failed + 1, policy.getFailedFiles());
+      assertEquals(4, host.sessions.size());
+      for (TestParserHost.Session session : host.sessions) {
+        assertFalse(session.workerName, session.open);
+        // A session that was never opened is not closed
+        assertEquals(session.workerName, i == 1 || !session.workerName.endsWith("_rop2"), session.closed);
+      }
+    }
+  }
+
+  /*
+   * A file rejected for its policy is counted as failed in the metrics of the policy.
+   */
+  @Test
+  public void testInvalidPolicyMetrics() {
+    Properties properties = new Properties();
+    properties.setProperty("tag_id", "PM_policy_nosuch");
+    TestParserHost host = new TestParserHost().add("n1_PM_policy_nosuch_20090816.153000+0000.log", PORT_ROPS,
+        properties);
+    TestParserHost.parser(host).run();
+
+    assertEquals("error n1_PM_policy_nosuch_20090816.153000+0000.log", host.callbacks.get(1));
+    PolicyMetrics policy = MetricsRegistry.policy("PM_policy_nosuch", Logger.getLogger("RedbackParserTest"));
+    assertEquals(1, policy.getFiles());
+    assertEquals(1, policy.getFailedFiles());
+  }
+
+  /*
+   * The parse context of a file that is not supported by the techpack is given back to the pool, and the file is
+   * counted in the metrics of its policy.
+   */
+  @Test
+  public void testUnsupportedFileReleasesContext() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("tag_id", "PM_policy_unsupported");
+    TestParserHost host = new TestParserHost();
+    host.closedWorkerSuffix = "wn";
+    for (int i = 1; i <= 3; i++) {
+      host.add("n" + i + "_PM_policy_unsupported_20090816.153000+0000.log", PORT_ROPS, properties);
+    }
+    RedbackParser parser = TestParserHost.parser(host);
+    parser.run();
+
+    Field contexts = RedbackParser.class.getDeclaredField("contexts");
+    contexts.setAccessible(true);
+    assertEquals(1, ((java.util.Collection<?>) contexts.get(parser)).size());
+    PolicyMetrics policy = MetricsRegistry.policy("PM_policy_unsupported", Logger.getLogger("RedbackParserTest"));
+    assertEquals(3, policy.getFiles());
+    assertEquals(3, policy.getFailedFiles());
+    assertEquals("post n3_PM_policy_unsupported_20090816.153000+0000.log", host.callbacks.get(7));
+  }
+
+  /*
+   * A failing host callback stops the worker in a pool as when the files are parsed one at a time: no more files are
+   * taken, and the files already taken are parsed to the end.
+   */
+  @Test
+  public void testFailingCallbackStopsWorker() {
+    for (String poolSize : new String[] { "1", "2" }) {
+      Properties properties = portProperties();
+      properties.setProperty("redback.workerPoolSize", poolSize);
+      TestParserHost host = new TestParserHost();
+      host.failingFinally = "n2_";
+      for (int i = 1; i <= 100; i++) {
+        host.add("n" + i + "_PM_policy_port_20090816.153000+0000.log", PORT_ROPS, properties);
+      }
+      RedbackParser parser = TestParserHost.parser(host);
+      parser.run();
+
+      assertEquals(3, parser.status());
+      int started = 0;
+      int finished = 0;
+      for (String call : host.callbacks) {
+        started += call.startsWith("pre ") ? 1 : 0;
+        finished += call.startsWith("finally ") ? 1 : 0;
+      }
+      assertEquals(poolSize, started, finished);
+      if (poolSize.equals("1")) {
+        assertEquals(2, started);
+      } else {
+        // Files taken before the failure was seen are still parsed
+        assertTrue(String.valueOf(started), started >= 2 && started < 100);
+      }
+    }
+  }
+
+  /*
+   * A file parsed in chunks ends at an empty line as when it is parsed line by line, and the lines after it are not
+   * read.
+   */
+  @Test
+  public void testChunksEndAtEmptyLine() {
+    StringBuilder content = new StringBuilder(PORT_ROPS).append("\n");
+    for (int i = 0; i < 2000; i++) {
+      content.append("epochtime:1250439002;slot:3;port:").append(i).append(";rx_pkts:1;\n");
+    }
+    Properties properties = portProperties();
+    properties.setProperty("redback.readBufferSize", "1024");
+    List<String> rows = parseRows(content.toString(), properties);
+    assertEquals(5, rows.size());
+
+    properties.setProperty("redback.chunkSize", "30000");
+    properties.setProperty("redback.chunkThreads", "1");
+    TestParserHost.TestFile file = new TestParserHost.TestFile("n1_PM_policy_port_20090816.153000+0000.log",
+        content.toString(), properties);
+    TestParserHost host = new TestParserHost().add(file);
+    TestParserHost.parser(host).run();
+    assertEquals(rows, host.rows());
+    assertTrue(String.valueOf(file.stream.available()), file.stream.available() > content.length() / 2);
+  }
+
+  // Four ROPs, the second line of slot 1 port 1 comes after a line of the next ROP
+  private static final String PORT_ROPS = "PM_policy_port header\n"
+      + "epochtime:1250436302;slot:1;port:1;rx_pkts:100;\n"
+      + "epochtime:1250436302;slot:1;port:2;rx_pkts:101;tx_pkts:(N/A);\n"
+      + "epochtime:1250437202;slot:1;port:1;rx_pkts:300;\n"
+      + "epochtime:1250436302;slot:1;port:1;tx_pkts:200;\n"
+      + "epochtime:1250438102;slot:1;port:1;rx_pkts:500;\n"
+      + "epochtime:1250439002;slot:2;port:1;rx_pkts:700;\n";
+
+  private static Properties portProperties() {
+    Properties properties = new Properties();
+    properties.setProperty("tag_id", "PM_policy_port");
+    return properties;
+  }
+
+  /**
+   * @return rows written for a port policy file, sorted
+   */
+  private static List<String> parseRows(String content, Properties properties) {
+    TestParserHost host = new TestParserHost().add("n1_PM_policy_port_20090816.153000+0000.log", content,
+        properties);
+    TestParserHost.parser(host).run();
+    return host.rows();
+  }
+
+  /*
+   * Streaming output writes the same rows as collecting all ROPs of the file, also when a line comes after a line of
+   * the next ROP.
+   */
+  @Test
+  public void testStreamingOutput() {
+    Properties properties = portProperties();
+    List<String> rows = parseRows(PORT_ROPS, properties);
+    assertEquals(5, rows.size());
+    int merged = 0;
+    for (String row : rows) {
+      if (row.contains("rx_pkts=100") && row.contains("tx_pkts=200")) {
+        merged++;
+      }
+    }
+    assertEquals(1, merged);
+
+    properties.setProperty("redback.streamingOutput", "true");
+    assertEquals(rows, parseRows(PORT_ROPS, properties));
+  }
+
   @SuppressWarnings("unchecked")
 @Test 
   public void testStorageOfSecondRowWithDiffKey(){
 	  RedbackParser ap = new RedbackParser();
+	  ParseContext ctx = new ParseContext(100);
 	  try {
 		//Set the policy (it determines how may group keys there are)
-		  groupKeysField.set(ap, RedbackParserTest.EPS_APN_POLICY_KEYSField.get(ap));
+		  setGroupKeysMethod.invoke(ap, ctx, "PM_policy_eps_apn");
 		  //Make some dummy data that represent 2 lines parsed from file: list1 and list 2. 
 		  ArrayList<NameValuePair> list1 = new ArrayList<NameValuePair>();
-		  list1.add(new NameValuePair("key1", "123456"));
-		  list1.add(new NameValuePair("key2", "value2"));
+		  list1.add(new NameValuePair("epochtime", "123456"));
+		  list1.add(new NameValuePair("SgiApnIndex", "value2"));
 		  list1.add(new NameValuePair("other1", "value3"));
 		  list1.add(new NameValuePair("other2", "value4"));
 		  ArrayList<NameValuePair> list2 = new ArrayList<NameValuePair>();
-		  list2.add(new NameValuePair("key1", "123456"));
-		  list2.add(new NameValuePair("key2", "value7"));
+		  list2.add(new NameValuePair("epochtime", "123456"));
+		  list2.add(new NameValuePair("SgiApnIndex", "value7"));
 		  list2.add(new NameValuePair("other3", "value5"));
 		  list2.add(new NameValuePair("other4", "value6"));
 		  //Run storeRow method to test that it correctly stores data in rop_dataStoreMap class object.
-		  storeRowMethod.invoke(ap, list1);
-		  storeRowMethod.invoke(ap, list2);
+		  storeRowMethod.invoke(ap, ctx, list1);
+		  storeRowMethod.invoke(ap, ctx, list2);
 		  //Get rop_dataStoreMap
-		  TreeMap<String,ArrayList<NameValuePair>> map = (TreeMap<String,ArrayList<NameValuePair>>)rop_dataStoreMapField.get(ap);
+		  Map<RecordKey,RopRecord> map = (Map<RecordKey,RopRecord>)rop_dataStoreMapField.get(ctx);
 		  //Check that the 2 sets of data have been added as separate entries (records) in rop_dataStoreMap.
 		  assertEquals(2, map.size());
-		  assertEquals(4, map.get("key2value2").size());
-		 // assertEquals(4, map.get("value7").size());
+		  assertEquals(4, map.get(new RecordKey(new String[] { null, "value2" })).size());
+		  assertEquals(4, map.get(new RecordKey(new String[] { null, "value7" })).size());
 	  } catch (IllegalArgumentException e) {
 		  fail(e.getMessage());
 	  } catch (IllegalAccessException e) {
@@ -253,12 +623,13 @@ public class RedbackParserTest {
   @Test
   public void checkGroupKeys(){
 	  RedbackParser ap = new RedbackParser();
+	  ParseContext ctx = new ParseContext(100);
 	  try {
 		  //setting the list to size 0.
 		  ArrayList<NameValuePair> list1 = new ArrayList<NameValuePair>();
 		  //Setting the required size to 4.
-		  groupKeysField.set(ap, RedbackParserTest.CHANNEL_POLICY_KEYSField.get(ap));
-		boolean result = (Boolean)checkGroupKeysMethod.invoke(ap, list1);
+		  setGroupKeysMethod.invoke(ap, ctx, "PM_policy_channel");
+		boolean result = (Boolean)checkGroupKeysMethod.invoke(ap, ctx, list1);
 		assertFalse(result);
 	} catch (IllegalArgumentException e) {
 		  fail(e.getMessage());
@@ -276,6 +647,7 @@ public class RedbackParserTest {
   @Test
   public void checkGroupKeys2(){
 	  RedbackParser ap = new RedbackParser();
+	  ParseContext ctx = new ParseContext(100);
 	  try {
 		  //setting the list to size 4.
 		  ArrayList<NameValuePair> list1 = new ArrayList<NameValuePair>();
@@ -284,8 +656,8 @@ public class RedbackParserTest {
 		  list1.add(new NameValuePair("slot", "value2"));
 		  list1.add(new NameValuePair("port", "value3"));
 		  list1.add(new NameValuePair("channel", "value4"));
-		  groupKeysField.set(ap, RedbackParserTest.CHANNEL_POLICY_KEYSField.get(ap)); //This policy has 4 group keys
-		boolean result = (Boolean)checkGroupKeysMethod.invoke(ap, list1);
+		  setGroupKeysMethod.invoke(ap, ctx, "PM_policy_channel"); //This policy has 4 group keys
+		boolean result = (Boolean)checkGroupKeysMethod.invoke(ap, ctx, list1);
 		assertTrue(result);
 	} catch (IllegalArgumentException e) {
 		  fail(e.getMessage());
@@ -303,14 +675,15 @@ public class RedbackParserTest {
   @Test
   public void checkGroupKeys3(){
 	  RedbackParser ap = new RedbackParser();
+	  ParseContext ctx = new ParseContext(100);
 	  try {
 		  //setting the list to size 3.
 		  ArrayList<NameValuePair> list1 = new ArrayList<NameValuePair>();
 		  list1.add(new NameValuePair("epochtime", "value1"));
 		  list1.add(new NameValuePair("slot", "value2"));
 		  list1.add(new NameValuePair("port", "value3"));
-		  groupKeysField.set(ap, RedbackParserTest.CHANNEL_POLICY_KEYSField.get(ap));//This policy has 4 group keys, more then are in list1.
-		boolean result = (Boolean)checkGroupKeysMethod.invoke(ap, list1);
+		  setGroupKeysMethod.invoke(ap, ctx, "PM_policy_channel");//This policy has 4 group keys, more then are in list1.
+		boolean result = (Boolean)checkGroupKeysMethod.invoke(ap, ctx, list1);
 		assertFalse(result);
 	} catch (IllegalArgumentException e) {
 		  fail(e.getMessage());
@@ -322,15 +695,45 @@ public class RedbackParserTest {
 	}
   }
   
+  /*
+   * This tests that nullable group keys may be missing and that group key names are matched ignoring case.
+   */
+  @Test
+  public void checkGroupKeysNullable(){
+	  RedbackParser ap = new RedbackParser();
+	  ParseContext ctx = new ParseContext(100);
+	  try {
+		  ArrayList<NameValuePair> list1 = new ArrayList<NameValuePair>();
+		  list1.add(new NameValuePair("epochtime", "value1"));
+		  list1.add(new NameValuePair("Slot", "value2"));
+		  list1.add(new NameValuePair("PORT", "value3"));
+		  list1.add(new NameValuePair("vlan_id", "value4"));
+		  setGroupKeysMethod.invoke(ap, ctx, "PM_policy_dot1q");//policing_policy_name is nullable in this policy
+		boolean result = (Boolean)checkGroupKeysMethod.invoke(ap, ctx, list1);
+		assertTrue(result);
+		list1.remove(3);
+		result = (Boolean)checkGroupKeysMethod.invoke(ap, ctx, list1);
+		assertFalse(result);
+	} catch (IllegalArgumentException e) {
+		  fail(e.getMessage());
+	} catch (IllegalAccessException e) {
+		  fail(e.getMessage());
+	} catch (InvocationTargetException e) {
+		System.out.println(e.getMessage());
+		  fail(e.getMessage());
+	}
+  }
+
   @Test
   public void testSetGroupKeys(){
 	RedbackParser ap = new RedbackParser();
+	ParseContext ctx = new ParseContext(100);
 	try{
 		String[] atmPolicyKeys = {"epochtime", "slot", "port", "vpi", "vci"};  
 		
-		setGroupKeysMethod.invoke(ap, "PM_policy_atm");
+		setGroupKeysMethod.invoke(ap, ctx, "PM_policy_atm");
 		
-		String[] groupKeys = (String[])groupKeysField.get(ap);
+		String[] groupKeys = (String[])groupKeysField.get(ctx);
 		assertEquals(atmPolicyKeys.length, groupKeys.length);
 		for(int i=0;i<atmPolicyKeys.length;i++){
 			assertEquals(atmPolicyKeys[i], groupKeys[i]);
@@ -345,14 +748,46 @@ public class RedbackParserTest {
   @Test
   public void testSetGroupKeysInvalidPolicyName(){
 	RedbackParser ap = new RedbackParser();
+	ParseContext ctx = new ParseContext(100);
 	try{
-		setGroupKeysMethod.invoke(ap, "PM_policy_atZ");
+		setGroupKeysMethod.invoke(ap, ctx, "PM_policy_atZ");
 		fail("An exception was expected but there was no exception thrown");
   	} catch (Exception e) {
 		assertTrue(true);
 	}
   }
 
+  /*
+   * Group keys of a policy that is not built in are compiled again when the interface property changes, and empty
+   * or repeated keys are rejected.
+   */
+  @Test
+  public void testSetGroupKeysFromProperty() throws Exception {
+    RedbackParser ap = new RedbackParser();
+    ap.init(null, "tp", "st", "sn", "wn");
+    ParseContext ctx = new ParseContext(100);
+    ctx.groupKeysProperty = "epochtime, slot";
+    setGroupKeysMethod.invoke(ap, ctx, "PM_policy_keytest");
+    assertEquals(2, ctx.groupKeys.length);
+    GroupKeySchema first = ctx.groupKeySchema;
+    setGroupKeysMethod.invoke(ap, ctx, "PM_policy_keytest");
+    assertSame(first, ctx.groupKeySchema);
+
+    ctx.groupKeysProperty = "epochtime,slot,port";
+    setGroupKeysMethod.invoke(ap, ctx, "PM_policy_keytest");
+    assertEquals(3, ctx.groupKeys.length);
+
+    for (String invalid : new String[] { "epochtime,,port", "epochtime,Slot,slot" }) {
+      ctx.groupKeysProperty = invalid;
+      try {
+        setGroupKeysMethod.invoke(ap, ctx, "PM_policy_keytest");
+        fail("Group keys " + invalid + " were accepted");
+      } catch (InvocationTargetException e) {
+        assertTrue(e.getCause().getMessage(), e.getCause().getMessage().startsWith("Invalid group keys"));
+      }
+    }
+  }
+
   @AfterClass
   public static void clean() {
     File i = new File(System.getProperty("user.home"), "testFile");
@@ -0,0 +1,60 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class RopClockTest {
+
+  private static final String[] ZONES = { "UTC", "Europe/Stockholm", "America/New_York", "Asia/Kathmandu",
+      "Australia/Lord_Howe" };
+
+  /*
+   * The DATETIME_IDs are the same as from SimpleDateFormat and GregorianCalendar, also around daylight saving time
+   * changes.
+   */
+  @Test
+  public void testSameAsCalendar() throws Exception {
+    String[] days = { "20090329", "20091025", "20090308", "20091101", "20080229", "20091231", "20091340" };
+    for (String zone : ZONES) {
+      for (int rop : new int[] { 900, 300, 3600 }) {
+        RopClock clock = new RopClock(rop, ZoneId.of(zone));
+        for (String day : days) {
+          for (int minute = 0; minute < 24 * 60; minute += 7) {
+            String stamp = String.format("%s.%02d%02d%02d", day, minute / 60, minute % 60, minute % 60);
+            assertEquals(zone + " " + rop + " " + stamp, legacy(stamp, TimeZone.getTimeZone(zone), rop),
+                clock.datetimeId(clock.align(clock.parseStamp("x_" + stamp + "+0000.log", 2))));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testAlign() {
+    RopClock clock = new RopClock(300, ZoneId.of("UTC"));
+    assertEquals(1250436300L, clock.align(1250436302L));
+    assertEquals(1250436300L, clock.align(1250436300L));
+    assertEquals(-300L, clock.align(-1L));
+    assertEquals("20090816152500", clock.datetimeId(1250436300L));
+    assertSame(RopClock.of(900), RopClock.of(900));
+  }
+
+  private static String legacy(String stamp, TimeZone zone, int rop) throws Exception {
+    SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd.HHmmss");
+    format.setTimeZone(zone);
+    long epoch = format.parse(stamp).getTime() / 1000;
+    GregorianCalendar calendar = new GregorianCalendar(zone);
+    calendar.setTimeInMillis((long) Math.floor(epoch / (double) rop) * rop * 1000);
+    return String.format("%04d%02d%02d%02d%02d%02d", calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1,
+        calendar.get(Calendar.DAY_OF_MONTH), calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE),
+        calendar.get(Calendar.SECOND));
+  }
+}
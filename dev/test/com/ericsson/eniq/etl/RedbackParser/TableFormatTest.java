@@ -0,0 +1,68 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+
+import org.junit.Test;
+
+public class TableFormatTest {
+
+  private final Logger log = Logger.getLogger("TableFormatTest");
+
+  /*
+   * The format of a policy is compiled once, and the matcher of a context is reused for the same format.
+   */
+  @Test
+  public void testCachedFormat() throws Exception {
+    TableFormat format = TableFormat.of("PM_policy_aspmem", null, null, "file", log);
+    assertSame(format, TableFormat.of("PM_policy_aspmem", null, null, "file2", log));
+    assertEquals(4, format.columnCount());
+    assertEquals("TotalMemoryKBytes", format.column(2));
+    assertTrue(format.columnsMatch());
+
+    Matcher matcher = format.matcher(null);
+    assertSame(matcher, format.matcher(matcher));
+    assertTrue(matcher.reset("1/2: 1000 500").find());
+    assertEquals("500", matcher.group(4));
+  }
+
+  /*
+   * The column count of the row pattern is checked once against the columns of the format.
+   */
+  @Test
+  public void testColumnsDoNotMatch() throws Exception {
+    TableFormat format = TableFormat.of("PM_policy_aspmem", "Slot,Asp,TotalMemoryKBytes", null, "file", log);
+    assertFalse(format.columnsMatch());
+  }
+
+  /*
+   * A new table format policy is defined by its columns and row pattern.
+   */
+  @Test
+  public void testFormatFromProperties() throws Exception {
+    TableFormat format = TableFormat.of("PM_policy_asptemp", "Slot,Asp,Temperature", "([0-9]+)/([0-9]+): ([0-9]+)C",
+        "file", log);
+    assertSame(format, TableFormat.of("PM_policy_asptemp", "Slot,Asp,Temperature", "([0-9]+)/([0-9]+): ([0-9]+)C",
+        "file2", log));
+    assertTrue(format.columnsMatch());
+    Matcher matcher = format.matcher(null);
+    assertTrue(matcher.reset("3/1: 45C").find());
+    assertEquals("45", matcher.group(3));
+  }
+
+  @Test
+  public void testNoColumns() {
+    try {
+      TableFormat.of("PM_policy_aspfoo", null, null, "file", log);
+      fail("An exception was expected but there was no exception thrown");
+    } catch (Exception e) {
+      assertEquals("Table column names not available.", e.getMessage());
+    }
+  }
+}
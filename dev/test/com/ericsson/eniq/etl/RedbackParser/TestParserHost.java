@@ -0,0 +1,218 @@
+package com.ericsson.eniq.etl.RedbackParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+import com.distocraft.dc5000.etl.parser.MeasurementFile;
+
+/**
+ * ParserHost of the tests: gives in-memory source files and records the callbacks and the rows saved to each
+ * measurement file session.
+ */
+class TestParserHost implements ParserHost {
+
+  final List<String> callbacks = Collections.synchronizedList(new ArrayList<String>());
+  final List<Session> sessions = Collections.synchronizedList(new ArrayList<Session>());
+  private final ConcurrentLinkedQueue<InputFile> files = new ConcurrentLinkedQueue<InputFile>();
+  // Sessions whose worker name ends with this are not opened
+  String closedWorkerSuffix = null;
+  // Saving rows fails in the sessions whose worker name ends with this
+  String failingWorkerSuffix = null;
+  // finallyParse fails for the files whose name contains this
+  String failingFinally = null;
+  // createMeasurementFile fails for the files whose name contains this
+  String failingFile = null;
+  // Measurement files take rows in batches
+  boolean batch = false;
+
+  TestParserHost add(String name, String content, Properties properties) {
+    return add(new TestFile(name, content, properties));
+  }
+
+  TestParserHost add(InputFile file) {
+    files.add(file);
+    return this;
+  }
+
+  static RedbackParser parser(TestParserHost host) {
+    RedbackParser parser = new RedbackParser();
+    parser.initHost(host, "tp", "st", "sn", "wn");
+    return parser;
+  }
+
+  /**
+   * @return rows of all sessions, sorted
+   */
+  List<String> rows() {
+    List<String> rows = new ArrayList<String>();
+    for (Session session : sessions) {
+      for (Map<String, String> row : session.rows) {
+        rows.add(row.toString());
+      }
+    }
+    Collections.sort(rows);
+    return rows;
+  }
+
+  @Override
+  public InputFile nextSourceFile() {
+    return files.poll();
+  }
+
+  @Override
+  public void preParse(InputFile sf) {
+    callbacks.add("pre " + sf.getName());
+  }
+
+  @Override
+  public void postParse(InputFile sf) {
+    callbacks.add("post " + sf.getName());
+  }
+
+  @Override
+  public void errorParse(Exception e, InputFile sf) {
+    callbacks.add("error " + sf.getName());
+  }
+
+  @Override
+  public void finallyParse(InputFile sf) throws Exception {
+    callbacks.add("finally " + sf.getName());
+    if (failingFinally != null && sf.getName().contains(failingFinally)) {
+      throw new Exception("finallyParse failed for " + sf.getName());
+    }
+  }
+
+  @Override
+  public MeasurementFile createMeasurementFile(InputFile sf, String tagId, String techPack, String setType,
+      String setName, String workerName, Logger log) throws Exception {
+    if (failingFile != null && sf.getName().contains(failingFile)) {
+      throw new Exception("No measurement file for " + sf.getName());
+    }
+    Session session = new Session(sf.getName(), workerName,
+        closedWorkerSuffix == null || !workerName.endsWith(closedWorkerSuffix));
+    session.failing = failingWorkerSuffix != null && workerName.endsWith(failingWorkerSuffix);
+    sessions.add(session);
+    return (MeasurementFile) Proxy.newProxyInstance(BatchMeasurementFile.class.getClassLoader(),
+        new Class<?>[] { batch ? BatchMeasurementFile.class : MeasurementFile.class }, session);
+  }
+
+  /**
+   * One measurement file
+   */
+  static final class Session implements InvocationHandler {
+
+    final String fileName;
+    final String workerName;
+    final List<Map<String, String>> rows = new ArrayList<Map<String, String>>();
+    int constantDataCalls = 0;
+    int saveRowsCalls = 0;
+    boolean open;
+    boolean closed = false;
+    boolean failing = false;
+    private Map<String, String> constants = new TreeMap<String, String>();
+    private Map<String, String> current = new TreeMap<String, String>();
+
+    Session(String fileName, String workerName, boolean open) {
+      this.fileName = fileName;
+      this.workerName = workerName;
+      this.open = open;
+    }
+
+    @Override
+    public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Exception {
+      String name = method.getName();
+      if (failing && (name.equals("saveData") || name.equals("saveRows"))) {
+        throw new Exception("Session " + workerName + " failed");
+      }
+      if (name.equals("addData") && args.length == 2) {
+        current.put((String) args[0], (String) args[1]);
+      } else if (name.equals("saveData")) {
+        rows.add(current);
+        current = new TreeMap<String, String>();
+      } else if (name.equals("setConstantData")) {
+        constantDataCalls++;
+        constants = new TreeMap<String, String>();
+        for (int i = 0; i < ((String[]) args[0]).length; i++) {
+          constants.put(((String[]) args[0])[i], ((String[]) args[1])[i]);
+        }
+      } else if (name.equals("saveRows")) {
+        saveRowsCalls++;
+        for (int row = 0; row < (Integer) args[2]; row++) {
+          Map<String, String> saved = new TreeMap<String, String>(constants);
+          for (int i = 0; i < ((String[][]) args[0])[row].length; i++) {
+            saved.put(((String[][]) args[0])[row][i], ((String[][]) args[1])[row][i]);
+          }
+          rows.add(saved);
+        }
+      } else if (name.equals("close")) {
+        open = false;
+        closed = true;
+      } else if (name.equals("isOpen")) {
+        return open;
+      } else if (name.equals("getRowCount")) {
+        return rows.size();
+      }
+      if (method.getReturnType() == boolean.class) {
+        return false;
+      } else if (method.getReturnType() == int.class) {
+        return 0;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Source file in memory
+   */
+  static final class TestFile implements InputFile {
+
+    private final String name;
+    private final byte[] content;
+    private final Properties properties;
+    // Stream of the last read of the file
+    ByteArrayInputStream stream = null;
+
+    TestFile(String name, String content, Properties properties) {
+      this.name = name;
+      this.content = content.getBytes();
+      this.properties = properties;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public String getDir() {
+      return "/test";
+    }
+
+    @Override
+    public String getProperty(String name, String defaultValue) {
+      return properties.getProperty(name, defaultValue);
+    }
+
+    @Override
+    public InputStream getFileInputStream() {
+      stream = new ByteArrayInputStream(content);
+      return stream;
+    }
+
+    @Override
+    public long fileSize() {
+      return content.length;
+    }
+  }
+}